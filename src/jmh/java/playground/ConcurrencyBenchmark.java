@@ -0,0 +1,72 @@
+package playground;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Id generation and counters, each at 1 thread and at one thread per core (Threads.MAX);
+ * evenIncrement() also at 4 threads to show how the class lock scales.
+ *
+ * Score is operations/us summed over all threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyBenchmark {
+    private final Atomicity.AtomicityIncrementer incrementer = new Atomicity.AtomicityIncrementer();
+    private final Atomicity.BlockSerialNumberGenerator blockGenerator = new Atomicity.BlockSerialNumberGenerator();
+    private final Atomicity.BlockSerialNumberGenerator monotonicGenerator =
+            Atomicity.BlockSerialNumberGenerator.monotonic();
+    private final Counters.Counter striped = Counters.striped();
+    private final Counters.Counter padded = Counters.padded();
+    private final Counters.PairedCounter paired = Counters.paired();
+
+    @Benchmark @Threads(1)
+    public int serialNumberSynchronized1() { return Atomicity.SerialNumberGenerator.nextSerialNumber(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public int serialNumberSynchronizedMax() { return Atomicity.SerialNumberGenerator.nextSerialNumber(); }
+
+    @Benchmark @Threads(1)
+    public long serialNumberBlock1() { return blockGenerator.nextSerialNumber(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public long serialNumberBlockMax() { return blockGenerator.nextSerialNumber(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public long serialNumberMonotonicMax() { return monotonicGenerator.nextSerialNumber(); }
+
+    @Benchmark @Threads(1)
+    public void evenIncrementSynchronized1() { incrementer.evenIncrement(); }
+
+    @Benchmark @Threads(4)
+    public void evenIncrementSynchronized4() { incrementer.evenIncrement(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public void evenIncrementSynchronizedMax() { incrementer.evenIncrement(); }
+
+    @Benchmark @Threads(1)
+    public long evenIncrementPaired1() { return paired.evenIncrement(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public long evenIncrementPairedMax() { return paired.evenIncrement(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public void incrementStripedMax() { striped.increment(); }
+
+    @Benchmark @Threads(Threads.MAX)
+    public void incrementPaddedMax() { padded.increment(); }
+}
@@ -0,0 +1,122 @@
+package playground;
+
+import com.amazon.chongrui.aws.common.util.JsonSerializationUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import playground.json.Base64Json;
+import playground.json.BulkDeserializer;
+import playground.json.JsonCodecRegistry;
+import playground.json.SmileCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JsonSerializationUtil round trips of the Car model used by JsonSerializationUtilClient:
+ * one Car, and a list of listSize Cars through serializeList/deserializeList.
+ * deserializeListParallel: the list through BulkDeserializer on the common ForkJoinPool.
+ * deserializeCarCached: the same through a warmed-up JsonCodecRegistry reader.
+ * Smile: the same list of Cars as one binary SmileCodec payload, against serializeList/deserializeList.
+ * Base64 payloads: serializeToBase64/deserializeFromBase64 Strings against Base64Json on a reused ByteBuffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    private static final String[] COLORS = {"black", "white", "silver", "red"};
+    private static final String[] MODELS = {"Corolla", "Camry", "Prius", "RAV4"};
+
+    @Param({"1000"})
+    public int listSize;
+
+    private Car car;
+    private String carJson;
+    private List<Car> cars;
+    private List<String> carsJson;
+    private String carBase64;
+    private ByteBuffer carBase64Bytes;
+    private final JsonCodecRegistry codecs = new JsonCodecRegistry();
+    private final Base64Json base64Json = new Base64Json(codecs);
+    private final SmileCodec smile = new SmileCodec();
+    private final BulkDeserializer bulk = new BulkDeserializer();
+    private byte[] carsSmile;
+    private final ByteBuffer payload = ByteBuffer.allocateDirect(4096);
+
+    @Setup(Level.Trial)
+    public void createCars() throws IOException {
+        car = new Car("black", "Corolla", new Date(1489314660000L));
+        carJson = JsonSerializationUtil.serialize(car);
+        codecs.warmUp(Car.class);
+        cars = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            cars.add(new Car(COLORS[i % COLORS.length], MODELS[i % MODELS.length], new Date(1489314660000L + i)));
+        }
+        carsJson = JsonSerializationUtil.serializeList(cars);
+        carsSmile = smile.serializeList(cars);
+        carBase64 = JsonSerializationUtil.serializeToBase64(car);
+        carBase64Bytes = ByteBuffer.allocateDirect(carBase64.length());
+        carBase64Bytes.put(carBase64.getBytes(StandardCharsets.US_ASCII)).flip();
+    }
+
+    @Benchmark
+    public String serializeCar() { return JsonSerializationUtil.serialize(car); }
+
+    @Benchmark
+    public Car deserializeCar() { return JsonSerializationUtil.deserialize(carJson, Car.class); }
+
+    @Benchmark
+    public Car deserializeCarCached() throws IOException { return codecs.deserialize(carJson, Car.class); }
+
+    @Benchmark
+    public List<String> serializeList() { return JsonSerializationUtil.serializeList(cars); }
+
+    @Benchmark
+    public List<Car> deserializeList() { return JsonSerializationUtil.deserializeList(carsJson, Car.class); }
+
+    @Benchmark
+    public BulkDeserializer.Result<Car> deserializeListParallel() { return bulk.deserializeList(carsJson, Car.class); }
+
+    @Benchmark
+    public byte[] serializeListSmile() throws IOException { return smile.serializeList(cars); }
+
+    @Benchmark
+    public List<Car> deserializeListSmile() throws IOException { return smile.deserializeList(carsSmile, Car.class); }
+
+    @Benchmark
+    public String serializeToBase64String() { return JsonSerializationUtil.serializeToBase64(car); }
+
+    @Benchmark
+    public Car deserializeFromBase64String() {
+        return JsonSerializationUtil.deserializeFromBase64(carBase64, new TypeReference<Car>(){});
+    }
+
+    @Benchmark
+    public int serializeToBase64Buffer() throws IOException {
+        payload.clear();
+        return base64Json.serializeToBase64(car, payload);
+    }
+
+    @Benchmark
+    public Car deserializeFromBase64Buffer() throws IOException {
+        return base64Json.deserializeFromBase64(carBase64Bytes.duplicate(), Car.class);
+    }
+}
@@ -0,0 +1,154 @@
+package playground;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import playground.grep.LiteralPrefilter;
+import playground.grep.MatchWriter;
+import playground.grep.ParallelChunkGrep;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RegexJGrep scan modes over a generated log-like corpus, output written to a discarding channel.
+ *
+ * - bufferedReader:   the original BufferedReader + Matcher loop
+ * - literalPrefilter: byte-level literal search first (same as bufferedReader if the regex has no literal)
+ * - parallelChunks:   memory-mapped chunks on the common ForkJoinPool
+ *
+ * Score is ms per full scan, the returned value is the number of matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegexJGrepBenchmark {
+    private static final String[] WORDS = {
+            "INFO", "request", "served", "in", "ms", "user", "session", "cache", "miss", "hit", "tcp", "socket",
+            "closed", "start", "stop", "payload", "table", "commit", "select", "timeout", "retry", "status"};
+
+    @Param({"\\b[Ssctp]\\w+", "ERROR \\d+"})
+    public String regex;
+
+    @Param({"64"})
+    public int corpusMegabytes;
+
+    private Path corpus;
+    private Pattern pattern;
+    private Charset charset;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws IOException {
+        pattern = Pattern.compile(regex);
+        charset = Charset.defaultCharset();
+        corpus = Files.createTempFile("regex-jgrep-corpus", ".log");
+        Random random = new Random(47);
+        long target = corpusMegabytes * (1L << 20);
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(corpus, charset)) {
+            StringBuilder line = new StringBuilder();
+            while (written < target) {
+                line.setLength(0);
+                int words = 5 + random.nextInt(15);
+                for (int w = 0; w < words; w++) {
+                    line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                if (random.nextInt(1000) == 0) {
+                    line.append("ERROR ").append(random.nextInt(500));  // selective: ~0.1% of lines
+                }
+                out.write(line.toString());
+                out.newLine();
+                written += line.length() + 1;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        Files.deleteIfExists(corpus);
+    }
+
+    @Benchmark
+    public long bufferedReader() throws IOException {
+        long index = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(corpus.toFile()));
+             MatchWriter out = discard()) {
+            Matcher m = pattern.matcher("");
+            String line;
+            while ((line = br.readLine()) != null) {
+                m.reset(line);
+                while (m.find()) {
+                    out.write(index++, line, m.start(), m.end(), m.start());
+                }
+            }
+        }
+        return index;
+    }
+
+    @Benchmark
+    public long literalPrefilter() throws IOException {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(pattern, charset);
+        if (prefilter == null) {
+            return bufferedReader();
+        }
+        long[] index = {0};
+        try (MatchWriter out = discard()) {
+            Matcher m = pattern.matcher("");
+            prefilter.grep(corpus, charset, line -> {
+                m.reset(line);
+                while (m.find()) {
+                    out.write(index[0]++, line, m.start(), m.end(), m.start());
+                }
+            });
+        }
+        return index[0];
+    }
+
+    @Benchmark
+    public long parallelChunks() throws IOException {
+        try (MatchWriter out = discard()) {
+            return new ParallelChunkGrep(pattern).grep(corpus, out);
+        }
+    }
+
+    private static MatchWriter discard() {
+        return new MatchWriter(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                src.position(src.limit());
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() { return true; }
+
+            @Override
+            public void close() {}
+        });
+    }
+}
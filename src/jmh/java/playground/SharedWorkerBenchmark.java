@@ -0,0 +1,66 @@
+package playground;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On -> off handoff rate of SharedWorker (monitor) and PhaseHandoff (phase), without the sleeps of WorkerOn/WorkerOff.
+ *
+ * The benchmark thread plays WorkerOn, a partner thread started per trial plays WorkerOff.
+ * One operation is a full round trip: workerOn(), partner wakes up, workerOff(), benchmark thread wakes up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedWorkerBenchmark {
+    @Param({"monitor", "phase"})
+    public String handoff;
+
+    private OnOffWorker worker;
+    private Thread partner;
+
+    @Setup(Level.Trial)
+    public void startPartner() {
+        worker = "phase".equals(handoff) ? new PhaseHandoff() : new SharedWorker();
+        partner = new Thread(() -> {
+            try {
+                while (!Thread.interrupted()) {
+                    worker.waitForWorkerOn();
+                    worker.workerOff();
+                }
+            } catch (InterruptedException e) {
+                // trial is over
+            }
+        });
+        partner.setDaemon(true);
+        partner.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopPartner() throws InterruptedException {
+        partner.interrupt();
+        partner.join();
+    }
+
+    @Benchmark
+    public void onOffRoundTrip() throws InterruptedException {
+        worker.workerOn();
+        worker.waitForWorkerOff();
+    }
+}
@@ -0,0 +1,41 @@
+package spring.xmlcentric;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the ServiceManager context: XML (ClassPathXmlApplicationContext) against GeneratedAppContext.
+ *
+ * Single shot in a fresh JVM per fork, no warm-up: class loading and interpretation are part of the cost,
+ * as for a short-lived batch JVM.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class SpringStartupBenchmark {
+    @Benchmark
+    public TransferService xmlContext() {
+        try (ConfigurableApplicationContext context =
+                     new ClassPathXmlApplicationContext(ServiceManager.XML_CONFIG_CLASSPATH)) {
+            return context.getBean(TransferService.class);
+        }
+    }
+
+    @Benchmark
+    public TransferService generatedContext() {
+        try (ConfigurableApplicationContext context = GeneratedAppContext.create()) {
+            return context.getBean(TransferService.class);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package playground;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Execution: javap -c Atomicity
@@ -46,7 +50,7 @@ public class Atomicity {
     void f1() { i++; }
     void f2() { i += 3; }
 
-    private static class AtomicityIncrementer implements Runnable {
+    static class AtomicityIncrementer implements Runnable {
         private int i = 0;
 
         /**
@@ -57,9 +61,11 @@ public class Atomicity {
          *
          * In Java, increment is NOT atomic and involves both a read
          * and a write, where there is room for threading problems.
+         *
+         * See Counters.paired() for a lock-free evenIncrement() that readers can never see half-done.
          */
         public int getValue() { return i; }
-        private synchronized void evenIncrement() { i++; i++; }
+        synchronized void evenIncrement() { i++; i++; }
         public void run() {
             while (true) {
                 evenIncrement();
@@ -95,4 +101,80 @@ public class Atomicity {
             return serialNumber++;
         }
     }
+
+    /**
+     * Lock-free, long-based replacement of SerialNumberGenerator.
+     *
+     * 1. each thread reserves a block of ids with one getAndAdd() on the shared AtomicLong
+     * 2. ids of the block are handed out from a ThreadLocal, no shared write until the block runs out
+     * 3. ids are unique but only increasing per thread; two threads interleave their blocks
+     * 4. monotonic(): every id comes from getAndIncrement(), strictly increasing in global order,
+     *    still lock-free but all threads contend on the same cache line
+     *
+     * Unused ids of a block are lost when its thread dies; ids never wrap around, the generator
+     * throws once Long.MAX_VALUE would be exceeded.
+     */
+    public static class BlockSerialNumberGenerator {
+        public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+        private final AtomicLong reserved = new AtomicLong();
+        private final int blockSize;
+        private final ThreadLocal<Block> block = ThreadLocal.withInitial(Block::new);
+
+        private static class Block {
+            long next;
+            long end;
+        }
+
+        public BlockSerialNumberGenerator() { this(DEFAULT_BLOCK_SIZE); }
+
+        /** @param blockSize 1 for strictly monotonic ids */
+        public BlockSerialNumberGenerator(int blockSize) {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+            }
+            this.blockSize = blockSize;
+        }
+
+        public static BlockSerialNumberGenerator monotonic() { return new BlockSerialNumberGenerator(1); }
+
+        public long nextSerialNumber() {
+            if (blockSize == 1) {
+                return checked(reserved.getAndIncrement());
+            }
+            Block b = block.get();
+            if (b.next == b.end) {
+                b.next = checked(reserved.getAndAdd(blockSize));
+                b.end = b.next + blockSize;
+            }
+            return b.next++;
+        }
+
+        private long checked(long start) {
+            if (start < 0 || start > Long.MAX_VALUE - blockSize) {
+                reserved.set(Long.MIN_VALUE);  // keep failing, never hand out a wrapped id
+                throw new IllegalStateException("Serial numbers exhausted");
+            }
+            return start;
+        }
+
+        /** example output: 8000000 unique ids from 8 threads */
+        public static void main(String[] args) throws InterruptedException {
+            final int threads = 8;
+            final int perThread = 1_000_000;
+            BlockSerialNumberGenerator generator = new BlockSerialNumberGenerator();
+            Set<Long> ids = ConcurrentHashMap.newKeySet();
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                executorService.execute(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        ids.add(generator.nextSerialNumber());
+                    }
+                });
+            }
+            executorService.shutdown();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+            System.out.println(ids.size() + " unique ids from " + threads + " threads");
+        }
+    }
 }
@@ -0,0 +1,119 @@
+package playground;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Lock-free counters for hot paths, instead of the synchronized evenIncrement() in Atomicity.
+ *
+ * 1. striped(): LongAdder, increments spread over cells that grow under contention;
+ *    get() sums the cells, exact once updates stop, a moving value while they run
+ * 2. padded(): one cell per core slot, 128 bytes apart so two cores never write the same cache line
+ *    (no false sharing); same read semantics as striped()
+ * 3. paired(): one AtomicLong, a multi-step update is computed on a local copy and published with one CAS,
+ *    readers only ever see values between whole updates (never odd after evenIncrement())
+ *
+ * Pick 1 or 2 for write-mostly statistics, 3 when readers need the invariant of a multi-step update.
+ */
+public class Counters {
+    public interface Counter {
+        void increment();
+        void add(long delta);
+        long get();
+    }
+
+    public static Counter striped() { return new StripedCounter(); }
+    public static Counter padded() { return new PaddedCounter(Runtime.getRuntime().availableProcessors()); }
+    public static PairedCounter paired() { return new PairedCounter(); }
+
+    static final class StripedCounter implements Counter {
+        private final LongAdder adder = new LongAdder();
+        public void increment() { adder.increment(); }
+        public void add(long delta) { adder.add(delta); }
+        public long get() { return adder.sum(); }
+    }
+
+    static final class PaddedCounter implements Counter {
+        /** 16 longs = 128 bytes: a cache line plus the adjacent line some CPUs prefetch together */
+        private static final int STRIDE = 16;
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        PaddedCounter(int cores) {
+            int size = Integer.highestOneBit(Math.max(1, cores * 2 - 1)) << 1;  // power of two >= 2 * cores
+            cells = new AtomicLongArray(size * STRIDE);
+            mask = size - 1;
+        }
+
+        public void increment() { add(1); }
+
+        public void add(long delta) {
+            cells.getAndAdd(cell() * STRIDE, delta);
+        }
+
+        public long get() {
+            long sum = 0;
+            for (int i = 0; i <= mask; i++) {
+                sum += cells.get(i * STRIDE);
+            }
+            return sum;
+        }
+
+        /** threads map to a fixed cell; a collision only costs contention, never correctness */
+        private int cell() {
+            long id = Thread.currentThread().getId();
+            int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    public static final class PairedCounter implements Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() { value.incrementAndGet(); }
+        public void add(long delta) { value.addAndGet(delta); }
+        public long get() { return value.get(); }
+
+        /**
+         * Apply all steps atomically: retried on a fresh copy if another thread won the CAS,
+         * so the steps must be side-effect free.
+         */
+        public long update(LongUnaryOperator steps) { return value.updateAndGet(steps); }
+
+        /** i++; i++; as one atomic update */
+        public long evenIncrement() {
+            return update(i -> {
+                i++;
+                i++;
+                return i;
+            });
+        }
+    }
+
+    /** Same race as Atomicity.AtomicityIncrementer, without a lock: example output: no odd value in 100000000 reads */
+    public static void main(String[] args) {
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        PairedCounter counter = paired();
+        for (int i = 0; i < 2; i++) {
+            executorService.execute(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    counter.evenIncrement();
+                }
+            });
+        }
+        int reads = 100_000_000;
+        for (int i = 0; i < reads; i++) {
+            long val = counter.get();
+            if (val % 2 != 0) {
+                System.out.println(val);
+                System.exit(0);
+            }
+        }
+        System.out.println("no odd value in " + reads + " reads");
+        executorService.shutdownNow();
+    }
+}
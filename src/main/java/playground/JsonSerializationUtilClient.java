@@ -4,11 +4,22 @@ import com.amazon.chongrui.aws.common.util.JsonSerializationUtil;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
+import playground.json.Base64Json;
+import playground.json.BulkDeserializer;
+import playground.json.JsonCodecRegistry;
+import playground.json.JsonStreams;
+import playground.json.SmileCodec;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * JsonSerializationUtil:
@@ -21,9 +32,22 @@ import java.util.*;
  * - deserializeList(Collection<String>, Class<T>)
  *
  * To read a random JSON file, use TypeReference<Map<String, Object>>
+ *
+ * On per-request paths use a shared JsonCodecRegistry: each Class/TypeReference is resolved to
+ * an ObjectReader/ObjectWriter once, warmUp() at startup.
+ *
+ * For message payloads use Base64Json: Base64 JSON straight into/from a ByteBuffer or stream, no String copies.
+ *
+ * For batches of 100k+ messages use BulkDeserializer: deserializeList on a ForkJoinPool, input order kept,
+ * failed messages reported per index instead of failing the batch.
+ *
+ * For compact payloads of DTOs like Car use SmileCodec: binary Smile, epoch-millis dates, shared repeated strings.
+ *
+ * For large collections use JsonStreams instead of serializeList/deserializeList:
+ * elements go straight to/from a stream as a JSON array or NDJSON, no String per element.
  */
 public class JsonSerializationUtilClient {
-    public static void main(String[] args) throws ParseException {
+    public static void main(String[] args) throws ParseException, IOException {
         /*
          * {
          *   "a" : [ "a1", "a2" ],
@@ -45,6 +69,14 @@ public class JsonSerializationUtilClient {
         System.out.println(JsonSerializationUtil.deserialize(jsonMapStr,
                                                              new TypeReference<Map<String, Set<String>>>(){}));
 
+        // {a=[a1, a2], b=[b2, b1]} twice, then readers=1 writers=1 hits=2 misses=2
+        JsonCodecRegistry codecs = new JsonCodecRegistry();
+        codecs.warmUp(new TypeReference<Map<String, Set<String>>>(){});
+        for (int i = 0; i < 2; i++) {
+            System.out.println(codecs.deserialize(jsonMapStr, new TypeReference<Map<String, Set<String>>>(){}));
+        }
+        System.out.println(codecs);
+
         // ewogICJhIiA6IFsgImExIiwgImEyIiBdLAogICJiIiA6IFsgImIyIiwgImIxIiBdCn0=
         String base64Str = JsonSerializationUtil.serializeToBase64(complex);
         System.out.println(base64Str);
@@ -53,6 +85,16 @@ public class JsonSerializationUtilClient {
         System.out.println(base64Map);
         assert complex.equals(base64Map);
 
+        // {a=[a1, a2], b=[b2, b1]}
+        Base64Json base64Json = new Base64Json();
+        ByteBuffer payload = ByteBuffer.allocateDirect(1024);
+        base64Json.serializeToBase64(complex, payload);
+        payload.flip();
+        Map<String, Set<String>> payloadMap = base64Json
+                .deserializeFromBase64(payload, new TypeReference<Map<String, Set<String>>>(){});
+        System.out.println(payloadMap);
+        assert complex.equals(payloadMap);
+
         /*[{
          *  "color" : "black",
          *  "model" : "Corolla",
@@ -75,6 +117,34 @@ public class JsonSerializationUtilClient {
         // [playground.Car@27808f31, playground.Car@436e852b]
         System.out.println(deserializedList);
         assert list.equals(deserializedList);
+
+        // [Corolla, null, Camry], failures: [1: Unexpected character ('b' (code 98)): ...]
+        List<String> batch = new ArrayList<>(serializedList);
+        batch.add(1, "{bad");
+        BulkDeserializer.Result<Car> bulk = new BulkDeserializer().deserializeList(batch, Car.class);
+        System.out.println(bulk.values().stream().map(car -> car == null ? null : car.getModel())
+                               .collect(Collectors.toList()) + ", failures: " + bulk.failures());
+
+        // JSON list: 158 bytes, Smile list: 75 bytes; Corolla, Camry
+        SmileCodec smile = new SmileCodec();
+        byte[] smileList = smile.serializeList(list);
+        System.out.println(String.format("JSON list: %d bytes, Smile list: %d bytes",
+                                         serializedList.stream().mapToInt(json -> json.getBytes().length).sum(),
+                                         smileList.length));
+        smile.deserializeList(smileList, Car.class).forEach(car -> System.out.println(car.getModel()));
+
+        /*
+         * {"color":"black","model":"Corolla","purchaseDate":1489314660000}
+         * {"color":"black","model":"Camry","purchaseDate":1485820800000}
+         */
+        JsonStreams streams = new JsonStreams();
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        streams.write(list, ndjson, JsonStreams.Format.NDJSON);
+        System.out.print(ndjson);
+        // Corolla, Camry
+        try (Stream<Car> cars = streams.stream(new ByteArrayInputStream(ndjson.toByteArray()), Car.class)) {
+            cars.forEach(car -> System.out.println(car.getModel()));
+        }
     }
 }
 
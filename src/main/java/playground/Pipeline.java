@@ -0,0 +1,379 @@
+package playground;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * SharedWorker generalized: WorkerOn -> WorkerOff is a 2-stage pipeline passing one token at a time,
+ * this passes batches of items through any number of stages.
+ *
+ * 1. every stage owns a bounded lock-free RingBuffer as its input and runs as a Runnable on an ExecutorService,
+ *    like WorkerOn/WorkerOff; shutdownNow() stops it the same way, by interrupt
+ * 2. a stage drains up to batchSize items at once and hands them to its Stage function in one call,
+ *    the per-item handoff cost (and the per-item sleep of the on/off workers) is paid once per batch
+ * 3. backpressure: emitting into a full downstream ring blocks the stage, so a slow stage stalls the stages
+ *    and the submit() calls upstream of it instead of growing a queue
+ * 4. waiting for items or for room spins a little, then parks with a growing timeout: no lock, no notify
+ *
+ * metrics() reports per stage: items, batches, throughput, input queue depth and time blocked downstream.
+ *
+ * Pipeline<Integer> pipeline = Pipeline.<Integer>builder(64, 16)
+ *         .stage("parse", (batch, emit) -> batch.forEach(emit))
+ *         .stage("store", Pipeline.Stage.of(() -> TimeUnit.MILLISECONDS.sleep(20)))
+ *         .build(item -> { });
+ * pipeline.start(executorService);
+ * pipeline.submit(1);
+ */
+public class Pipeline<T> {
+    /**
+     * Work of one stage: process a batch and emit any number of items downstream, in order.
+     * Called by the single thread of the stage; emit blocks while the downstream ring is full.
+     */
+    public interface Stage<I, O> {
+        void process(List<I> batch, Consumer<? super O> emit) throws InterruptedException;
+
+        /**
+         * Plug the step of an existing worker in, e.g. WaitNotifyAll::workOn: run it once per batch,
+         * then pass the batch on unchanged. The ring between the stages replaces the worker's own handoff.
+         */
+        static <T> Stage<T, T> of(Step step) {
+            return (batch, emit) -> {
+                step.run();
+                batch.forEach(emit);
+            };
+        }
+    }
+
+    /** One step of a worker loop, interrupted like the loop. */
+    public interface Step {
+        void run() throws InterruptedException;
+    }
+
+    private final RingBuffer<T> input;
+    private final List<StageWorker<?, ?>> workers;
+
+    private Pipeline(RingBuffer<T> input, List<StageWorker<?, ?>> workers) {
+        this.input = input;
+        this.workers = workers;
+    }
+
+    /**
+     * @param capacity  size of each stage's input ring, rounded up to a power of two
+     * @param batchSize max items handed to a stage at once
+     */
+    public static <T> Builder<T, T> builder(int capacity, int batchSize) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        return new Builder<>(capacity, batchSize);
+    }
+
+    /** Run every stage as a task of the executor, which needs one thread per stage. */
+    public void start(ExecutorService executorService) {
+        for (StageWorker<?, ?> worker : workers) {
+            executorService.execute(worker);
+        }
+    }
+
+    /** Add an item at the head of the pipeline, blocking while the first stage's ring is full. */
+    public void submit(T item) throws InterruptedException {
+        input.put(item);
+    }
+
+    /** @return false if the first stage's ring is full */
+    public boolean offer(T item) {
+        return input.offer(item);
+    }
+
+    public List<StageMetrics> metrics() {
+        List<StageMetrics> metrics = new ArrayList<>(workers.size());
+        for (StageWorker<?, ?> worker : workers) {
+            metrics.add(worker.metrics());
+        }
+        return metrics;
+    }
+
+    public static final class Builder<T, O> {
+        private final int capacity;
+        private final int batchSize;
+        private final RingBuffer<T> input;
+        private final List<StageWorker<?, ?>> workers;
+        /** the open end: stage whose emit target is not known yet */
+        private final StageWorker<?, O> last;
+
+        private Builder(int capacity, int batchSize) {
+            this(capacity, batchSize, new RingBuffer<>(capacity), new ArrayList<>(), null);
+        }
+
+        private Builder(int capacity, int batchSize, RingBuffer<T> input, List<StageWorker<?, ?>> workers,
+                        StageWorker<?, O> last) {
+            this.capacity = capacity;
+            this.batchSize = batchSize;
+            this.input = input;
+            this.workers = workers;
+            this.last = last;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R> Builder<T, R> stage(String name, Stage<? super O, R> stage) {
+            // the first stage reads the pipeline input, the others a fresh ring fed by the previous stage
+            RingBuffer<O> ring = last == null ? (RingBuffer<O>) input : new RingBuffer<>(capacity);
+            if (last != null) {
+                last.output = ring;
+            }
+            StageWorker<O, R> worker = new StageWorker<>(name, stage, ring, batchSize);
+            workers.add(worker);
+            return new Builder<>(capacity, batchSize, input, workers, worker);
+        }
+
+        /** @param sink receives the output of the last stage, on that stage's thread */
+        public Pipeline<T> build(Consumer<? super O> sink) {
+            if (last == null) {
+                throw new IllegalStateException("no stage");
+            }
+            last.sink = sink;
+            return new Pipeline<>(input, Collections.unmodifiableList(new ArrayList<>(workers)));
+        }
+    }
+
+    /** Snapshot of one stage. */
+    public static final class StageMetrics {
+        public final String name;
+        public final long items;
+        public final long batches;
+        public final double itemsPerSecond;
+        public final int queueDepth;
+        public final int queueCapacity;
+        public final long blockedMillis;
+
+        StageMetrics(String name, long items, long batches, double itemsPerSecond, int queueDepth,
+                     int queueCapacity, long blockedMillis) {
+            this.name = name;
+            this.items = items;
+            this.batches = batches;
+            this.itemsPerSecond = itemsPerSecond;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.blockedMillis = blockedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d items in %d batches, %.1f items/s, queue %d/%d, blocked downstream %d ms",
+                                 name, items, batches, itemsPerSecond, queueDepth, queueCapacity, blockedMillis);
+        }
+    }
+
+    private static final class StageWorker<I, O> implements Runnable {
+        private final String name;
+        private final Stage<? super I, O> stage;
+        private final RingBuffer<I> input;
+        private final int batchSize;
+        /** ring of the next stage, null for the last stage */
+        private volatile RingBuffer<O> output;
+        /** receives the output of the last stage */
+        private volatile Consumer<? super O> sink;
+        // single writer: the stage thread; read by metrics()
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong blockedNanos = new AtomicLong();
+        private volatile long startedAt;
+
+        StageWorker(String name, Stage<? super I, O> stage, RingBuffer<I> input, int batchSize) {
+            this.name = name;
+            this.stage = stage;
+            this.input = input;
+            this.batchSize = batchSize;
+        }
+
+        public void run() {
+            startedAt = System.nanoTime();
+            List<I> batch = new ArrayList<>(batchSize);
+            Consumer<O> emit = this::emit;
+            try {
+                while (!Thread.interrupted()) {
+                    input.take(batch, batchSize);
+                    stage.process(Collections.unmodifiableList(batch), emit);
+                    items.lazySet(items.get() + batch.size());
+                    batches.lazySet(batches.get() + 1);
+                    batch.clear();
+                }
+            } catch (InterruptedException | Interrupted e) {
+                // shut down, items in flight are dropped
+            }
+        }
+
+        /** Consumer for the Stage function: a blocked emit is timed and an interrupt escapes unchecked. */
+        private void emit(O item) {
+            RingBuffer<O> ring = output;
+            if (ring == null) {
+                sink.accept(item);
+            } else if (!ring.offer(item)) {
+                long start = System.nanoTime();
+                try {
+                    ring.put(item);
+                } catch (InterruptedException e) {
+                    throw new Interrupted();
+                }
+                blockedNanos.lazySet(blockedNanos.get() + System.nanoTime() - start);
+            }
+        }
+
+        StageMetrics metrics() {
+            long started = startedAt;
+            double seconds = started == 0 ? 0 : (System.nanoTime() - started) / 1e9;
+            long n = items.get();
+            return new StageMetrics(name, n, batches.get(), seconds > 0 ? n / seconds : 0,
+                                    input.size(), input.capacity(), blockedNanos.get() / 1_000_000);
+        }
+    }
+
+    private static final class Interrupted extends RuntimeException {
+        Interrupted() { super(null, null, false, false); }
+    }
+
+    /**
+     * Bounded multi-producer multi-consumer ring buffer (D. Vyukov's algorithm), no lock.
+     *
+     * Every slot carries a sequence number: slot i is free for the producer of position p when its sequence
+     * equals p, and holds the item of position p for the consumer when it equals p + 1.
+     * A producer or consumer claims a position with one CAS on tail or head, then publishes the slot.
+     */
+    static final class RingBuffer<E> {
+        private static final int SPINS = 1 << 8;
+        private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final AtomicReferenceArray<E> items;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        RingBuffer(int capacity) {
+            int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            items = new AtomicReferenceArray<>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+            mask = size - 1;
+        }
+
+        int capacity() { return mask + 1; }
+
+        /** approximate while producers or consumers are running */
+        int size() {
+            long size = tail.get() - head.get();
+            return (int) Math.max(0, Math.min(size, capacity()));
+        }
+
+        boolean offer(E item) {
+            while (true) {
+                long pos = tail.get();
+                int slot = (int) pos & mask;
+                long diff = sequences.get(slot) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        items.lazySet(slot, item);
+                        sequences.set(slot, pos + 1);
+                        return true;
+                    }
+                } else if (diff < 0) {
+                    return false;  // the consumer of the previous lap has not freed the slot: full
+                }
+                // else another producer claimed pos, retry with the new tail
+            }
+        }
+
+        E poll() {
+            while (true) {
+                long pos = head.get();
+                int slot = (int) pos & mask;
+                long diff = sequences.get(slot) - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        E item = items.get(slot);
+                        items.lazySet(slot, null);
+                        sequences.set(slot, pos + mask + 1);
+                        return item;
+                    }
+                } else if (diff < 0) {
+                    return null;  // empty
+                }
+            }
+        }
+
+        /** offer(), waiting while the ring is full: this is the backpressure */
+        void put(E item) throws InterruptedException {
+            int idle = 0;
+            while (!offer(item)) {
+                idle = idle(idle);
+            }
+        }
+
+        /** Wait for at least one item, then move up to max items into the batch without waiting further. */
+        void take(List<E> batch, int max) throws InterruptedException {
+            int idle = 0;
+            E item;
+            while ((item = poll()) == null) {
+                idle = idle(idle);
+            }
+            batch.add(item);
+            while (batch.size() < max && (item = poll()) != null) {
+                batch.add(item);
+            }
+        }
+
+        /** spin, then park 1 us, 2 us, ... up to 1 ms: a stalled stage costs little CPU */
+        private static int idle(int idle) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (idle >= SPINS) {
+                LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle - SPINS, 20)));
+            }
+            return idle + 1;
+        }
+    }
+
+    /**
+     * WorkerOn -> WorkerOff as stages: the step of "on" (180 ms) and "off" (200 ms) runs per batch
+     * instead of per token, fed by a producer faster than both. Example output:
+     * on: 1024 items in 16 batches, 340.7 items/s, queue 64/64, blocked downstream 96 ms
+     * off: 896 items in 14 batches, 298.1 items/s, queue 64/64, blocked downstream 0 ms
+     * count: 896 items in 14 batches, 298.1 items/s, queue 0/64, blocked downstream 0 ms
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Counters.Counter done = Counters.striped();
+        Pipeline<Integer> pipeline = Pipeline.<Integer>builder(64, 64)
+                .stage("on", Stage.<Integer>of(WaitNotifyAll::workOn))
+                .stage("off", Stage.<Integer>of(WaitNotifyAll::workOff))
+                .stage("count", (List<Integer> batch, Consumer<? super Integer> emit) -> done.add(batch.size()))
+                .build(item -> { });
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        pipeline.start(executorService);
+        executorService.execute(() -> {
+            try {
+                for (int i = 0; !Thread.interrupted(); i++) {
+                    pipeline.submit(i);  // blocks once every ring is full
+                }
+            } catch (InterruptedException e) {
+                // shut down
+            }
+        });
+        TimeUnit.SECONDS.sleep(3);
+        for (StageMetrics stage : pipeline.metrics()) {
+            System.out.println(stage);
+        }
+        executorService.shutdownNow();  // Interrupt all tasks
+    }
+}
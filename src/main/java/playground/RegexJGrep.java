@@ -1,30 +1,147 @@
 package playground;
 
+import playground.grep.FileFollower;
+import playground.grep.LineHandler;
+import playground.grep.LiteralPrefilter;
+import playground.grep.MatchWriter;
+import playground.grep.MultiPatternMatcher;
+import playground.grep.ParallelChunkGrep;
+import playground.grep.TrigramIndex;
+
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A very simple version of the 'grep' program.
  * {args: RegexJGrep.java "\\b[Ssctp]\\w+"}
+ *
+ * -parallel: memory-map the file and match line-aligned chunks on all cores,
+ *            output is identical to the sequential scan
+ * {args: RegexJGrep.java "\\b[Ssctp]\\w+" -parallel}
+ *
+ * -e regex (repeatable), -f patternfile: match all patterns in a single pass,
+ *            literals through Aho-Corasick, each hit tagged with its pattern id
+ *            "index: patternId: group: start"
+ * {args: -e Matcher -e "\\b[Ssctp]\\w+" RegexJGrep.java}
+ *
+ * -follow: like 'tail -F', keep matching the lines appended to the file;
+ *            index keeps counting across appends and rotations (new inode or truncation)
+ * {args: -follow /var/log/app.log "ERROR \\w+"}
+ *
+ * A regex with a required literal, e.g. "ERROR \\w+", first looks for the literal in the raw bytes;
+ * only the lines containing it are decoded and matched.
+ *
+ * -index: build (once per file version) a trigram index sidecar "filename.trigrams" and only scan
+ *            the blocks that can contain the regex's required literal; a regex without a required literal
+ *            of 3 or more bytes cannot use the index, a warning goes to stderr and the whole file is scanned
+ * {args: -index /archive/app-2017-03-12.log "ERROR \\w+"}
+ *
+ * Matches go to stdout through a batched MatchWriter, not System.out.println().
+ * Once stdout is closed (e.g. "| head -1") the scan stops and the exit status is 0, as with System.out.
  */
 public class RegexJGrep {
+    private static final String USAGE =
+            "Usage: java RegexJGrep [-parallel | -follow | -index] [-e regex]... [-f patternfile] filename [regex]";
+
     public static void main(String[] args) throws Exception {
-        if (args.length < 2) {
-            System.out.println("Usage: java RegexJGrep filename regex");
+        boolean parallel = false;
+        boolean follow = false;
+        boolean indexed = false;
+        boolean multi = false;
+        List<String> patterns = new ArrayList<>();
+        List<String> operands = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-parallel".equals(args[i])) {
+                parallel = true;
+            } else if ("-follow".equals(args[i])) {
+                follow = true;
+            } else if ("-index".equals(args[i])) {
+                indexed = true;
+            } else if ("-e".equals(args[i]) && i + 1 < args.length) {
+                patterns.add(args[++i]);
+                multi = true;
+            } else if ("-f".equals(args[i]) && i + 1 < args.length) {
+                patterns.addAll(MultiPatternMatcher.readPatternFile(Paths.get(args[++i])));
+                multi = true;
+            } else {
+                operands.add(args[i]);
+            }
+        }
+        if (!multi && operands.size() == 2) {
+            patterns.add(operands.remove(1));
+        }
+        int modes = (parallel ? 1 : 0) + (follow ? 1 : 0) + (indexed ? 1 : 0);
+        if (operands.size() != 1 || patterns.isEmpty() || modes > 1 || indexed && multi) {
+            System.out.println(USAGE);
             System.exit(0);
         }
-        BufferedReader br = new BufferedReader(new FileReader(args[0]));
-        Matcher m = Pattern.compile(args[1]).matcher("");
+        try (MatchWriter out = MatchWriter.stdout()) {
+            grep(operands.get(0), patterns, multi, parallel, follow, indexed, out);
+        } catch (MatchWriter.ClosedOutputException e) {
+            // stdout was closed, e.g. "| head -1": stop scanning, nothing to report
+        }
+    }
+
+    private static void grep(String filename, List<String> patterns, boolean multi,
+                             boolean parallel, boolean follow, boolean indexed, MatchWriter out)
+            throws Exception {
+        MultiPatternMatcher matcher = multi ? MultiPatternMatcher.compile(patterns) : null;
+        if (parallel) {
+            ParallelChunkGrep grep = multi ? new ParallelChunkGrep(matcher)
+                                           : new ParallelChunkGrep(Pattern.compile(patterns.get(0)));
+            grep.grep(Paths.get(filename), out);
+            return;
+        }
+        Pattern pattern = multi ? null : Pattern.compile(patterns.get(0));
+        LineHandler handler = multi ? multiGrep(matcher, out) : grep(pattern, out);
+        if (follow) {
+            new FileFollower(Paths.get(filename)).follow(handler, out);
+            return;
+        }
+        LiteralPrefilter prefilter = multi ? null : LiteralPrefilter.of(pattern, Charset.defaultCharset());
+        if (indexed && (prefilter == null || !TrigramIndex.narrows(prefilter))) {
+            System.err.println("-index ignored: \"" + pattern + "\" has no required literal of 3 or more bytes,"
+                               + " scanning the whole file");
+        } else if (indexed) {
+            try (TrigramIndex index = TrigramIndex.open(Paths.get(filename))) {
+                index.grep(prefilter, Charset.defaultCharset(), handler);
+            }
+            return;
+        }
+        if (prefilter != null) {
+            prefilter.grep(Paths.get(filename), Charset.defaultCharset(), handler);
+            return;
+        }
+        BufferedReader br = new BufferedReader(new FileReader(filename));
         // Iterate through the lines of input file
-        int index = 0;
         String line;
         while ((line = br.readLine()) != null ) {
+            handler.line(line);
+        }
+    }
+
+    private static LineHandler grep(Pattern pattern, MatchWriter out) {
+        Matcher m = pattern.matcher("");
+        long[] index = {0};
+        return line -> {
             m.reset(line);
             while(m.find()) {
-                System.out.println(index++ + ": " + m.group() + ": " + m.start());
+                out.write(index[0]++, line, m.start(), m.end(), m.start());
             }
-        }
+        };
+    }
+
+    /** every line goes through all patterns at once */
+    private static LineHandler multiGrep(MultiPatternMatcher matcher, MatchWriter out) {
+        MultiPatternMatcher.Scanner scanner = matcher.scanner();
+        long[] index = {0};
+        return line -> scanner.scan(line, 0, line.length(), (id, start, end) ->
+                out.write(index[0]++, id, line, start, end, start));
     }
 }
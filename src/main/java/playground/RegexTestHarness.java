@@ -1,10 +1,30 @@
 package playground;
 
 import java.io.Console;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
+/**
+ * Interactive regex tester.
+ *
+ * Compiled patterns are kept in a bounded LRU cache, re-entering a regex does not recompile it.
+ *
+ * "bench <iterations> <regex>" at the regex prompt benchmarks the regex against the next input:
+ * 1/ time the input repeated 1, 2, 4, ... times; if time grows super-linearly with the length
+ *    (or a run exceeds the time budget) warn about catastrophic backtracking and stop
+ * 2/ otherwise warm up, then time <iterations> runs of find() over the input: ns/match and bytes allocated/match
+ *
+ * Enter your regex: bench 100000 (a+)+b
+ * Enter input string to search: aaaaaaaaaaaaaaaaaaaaaa
+ */
 public class RegexTestHarness {
+    private static final String BENCH = "bench ";
+    private static final int CACHE_SIZE = 64;
 
     public static void main(String[] args){
         Console console = System.console();
@@ -12,10 +32,24 @@ public class RegexTestHarness {
             System.err.println("No console.");
             System.exit(1);
         }
+        PatternCache cache = new PatternCache(CACHE_SIZE);
         while (true) {
 
-            Pattern pattern =
-                    Pattern.compile(console.readLine("%nEnter your regex: "));
+            String regex = console.readLine("%nEnter your regex: ");
+            if (regex.startsWith(BENCH)) {
+                String[] command = regex.substring(BENCH.length()).trim().split(" ", 2);
+                if (command.length < 2 || !command[0].matches("\\d+")) {
+                    console.format("Usage: bench <iterations> <regex>%n");
+                    continue;
+                }
+                Pattern pattern = cache.get(command[1]);
+                String input = console.readLine("Enter input string to search: ");
+                new Benchmark(pattern, input).run(Math.max(1, Integer.parseInt(command[0])), console.writer());
+                console.flush();
+                continue;
+            }
+
+            Pattern pattern = cache.get(regex);
 
             Matcher matcher =
                     pattern.matcher(console.readLine("Enter input string to search: "));
@@ -35,4 +69,178 @@ public class RegexTestHarness {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * LRU cache of compiled patterns: an access-ordered LinkedHashMap evicting its eldest entry.
+     * Pattern is immutable and thread-safe, but the cache itself is not.
+     */
+    static class PatternCache {
+        private final Map<String, Pattern> patterns;
+
+        PatternCache(final int maxSize) {
+            patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        Pattern get(String regex) {
+            return patterns.computeIfAbsent(regex, Pattern::compile);
+        }
+    }
+
+    static class Benchmark {
+        /** time growth exponent above which the regex is reported as super-linear, 1.0 is linear */
+        private static final double SUPER_LINEAR = 1.5;
+        private static final int MAX_DOUBLINGS = 6;
+        private static final long BUDGET_NANOS = 2_000_000_000L;
+
+        private final Pattern pattern;
+        private final String input;
+
+        Benchmark(Pattern pattern, String input) {
+            this.pattern = pattern;
+            this.input = input;
+        }
+
+        void run(int iterations, PrintWriter console) {
+            if (!scaling(console)) {
+                return;
+            }
+            Matcher matcher = pattern.matcher(input);
+            int warmUp = Math.max(1, iterations / 10);
+            long matchesPerRun = timeRuns(matcher, warmUp).matches / warmUp;
+
+            long allocatedBefore = allocatedBytes();
+            Runs runs = timeRuns(matcher, iterations);
+            long allocatedAfter = allocatedBytes();
+            // without any match, report per run
+            long units = runs.matches > 0 ? runs.matches : iterations;
+            String unit = runs.matches > 0 ? "match" : "run";
+            console.format("%d runs, %d matches/run: %.1f ns/%s", iterations, matchesPerRun,
+                           (double) runs.nanos / units, unit);
+            if (allocatedBefore >= 0) {
+                console.format(", %.1f bytes allocated/%s", (double) (allocatedAfter - allocatedBefore) / units, unit);
+            }
+            console.format("%n");
+        }
+
+        /**
+         * time a single run over the input repeated 1, 2, 4, ... times and compare successive lengths
+         * @return false if the regex looks catastrophic on this input
+         */
+        private boolean scaling(PrintWriter console) {
+            if (input.isEmpty()) {
+                return true;
+            }
+            StringBuilder text = new StringBuilder(input);
+            long previous = -1;
+            for (int doubling = 0; doubling <= MAX_DOUBLINGS; doubling++) {
+                long nanos = timeOnce(text);
+                if (nanos < 0) {
+                    console.format("WARNING: no result within %d ms at length %d, "
+                                   + "likely catastrophic backtracking%n", BUDGET_NANOS / 1_000_000, text.length());
+                    return false;
+                }
+                console.format("length %8d: %12d ns%n", text.length(), nanos);
+                if (previous > 0 && nanos > 100_000) {
+                    double exponent = Math.log((double) nanos / previous) / Math.log(2);
+                    if (exponent > SUPER_LINEAR) {
+                        console.format("WARNING: match time grows like n^%.1f, possible catastrophic backtracking%n",
+                                       exponent);
+                        return false;
+                    }
+                }
+                previous = nanos;
+                text.append(text);
+            }
+            return true;
+        }
+
+        /** @return the best of 3 timings of one full find() run, or -1 when the time budget ran out */
+        private long timeOnce(CharSequence text) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                Matcher matcher = pattern.matcher(new DeadlineCharSequence(text, start + BUDGET_NANOS));
+                try {
+                    while (matcher.find()) {
+                        // consume all matches
+                    }
+                } catch (DeadlineCharSequence.Expired e) {
+                    return -1;
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            return best;
+        }
+
+        private static Runs timeRuns(Matcher matcher, int iterations) {
+            Runs runs = new Runs();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                matcher.reset();
+                while (matcher.find()) {
+                    runs.matches++;
+                }
+            }
+            runs.nanos = System.nanoTime() - start;
+            return runs;
+        }
+
+        /** @return bytes allocated by the current thread so far, or -1 if the JVM cannot tell */
+        private static long allocatedBytes() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+
+        private static class Runs {
+            long nanos;
+            long matches;
+        }
+    }
+
+    /**
+     * Fails a runaway match: java.util.regex cannot be interrupted,
+     * but every step of the matcher reads a char through charAt().
+     */
+    static class DeadlineCharSequence implements CharSequence {
+        static class Expired extends RuntimeException {
+            Expired() { super(null, null, false, false); }
+        }
+
+        private final CharSequence text;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(CharSequence text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & 0xfff) == 0 && System.nanoTime() > deadline) {
+                throw new Expired();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() { return text.length(); }
+
+        @Override
+        public CharSequence subSequence(int start, int end) { return text.subSequence(start, end); }
+
+        @Override
+        public String toString() { return text.toString(); }
+    }
+}
@@ -1,8 +1,14 @@
 package playground;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * One worker to turn on, the other to turn off.
@@ -19,7 +25,15 @@ import java.util.concurrent.TimeUnit;
  *     ... // Perform action appropriate to condition
  * }
  */
-class SharedWorker {
+interface OnOffWorker {
+    void workerOn();
+    void workerOff();
+    void waitForWorkerOn() throws InterruptedException;
+    void waitForWorkerOff() throws InterruptedException;
+    boolean getWorker();
+}
+
+class SharedWorker implements OnOffWorker {
     private volatile boolean worker = false;
     public synchronized void workerOn(){
         worker = true;
@@ -48,16 +62,139 @@ class SharedWorker {
     public synchronized boolean getWorker() { return worker; }
 }
 
+/**
+ * Lock-free replacement of SharedWorker: no monitor, no notifyAll().
+ *
+ * 1. state is a phase counter, even = off, odd = on; a toggle is one CAS to the next phase
+ * 2. a waiter spins a little, then parks in the queue of the state it waits for
+ * 3. a toggle unparks only the queue of the new state, i.e. exactly the threads entitled to go next;
+ *    the other side keeps sleeping (notifyAll() wakes everybody, who then fight over the monitor)
+ * 4. a waiter waits for the phase after the one it started in, so a quick on -> off -> on is never missed
+ *
+ * The time from a toggle to each woken waiter running again is recorded in a LatencyHistogram.
+ */
+class PhaseHandoff implements OnOffWorker {
+    private static final int SPINS = 1 << 10;
+
+    private final AtomicLong phase = new AtomicLong();
+    private final Queue<Thread> onWaiters = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> offWaiters = new ConcurrentLinkedQueue<>();
+    /** System.nanoTime() of the last toggle to off [0] and to on [1] */
+    private final AtomicLongArray toggledAt = new AtomicLongArray(2);
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public void workerOn() { toggle(true); }
+    public void workerOff() { toggle(false); }
+    public void waitForWorkerOn() throws InterruptedException { await(true); }
+    public void waitForWorkerOff() throws InterruptedException { await(false); }
+    public boolean getWorker() { return isOn(phase.get()); }
+
+    public LatencyHistogram latency() { return latency; }
+
+    private static boolean isOn(long phase) { return (phase & 1) == 1; }
+
+    private void toggle(boolean on) {
+        while (true) {
+            long p = phase.get();
+            if (isOn(p) == on) {
+                return;  // already there, as setting the boolean twice
+            }
+            toggledAt.set(on ? 1 : 0, System.nanoTime());
+            if (phase.compareAndSet(p, p + 1)) {
+                Queue<Thread> entitled = on ? onWaiters : offWaiters;
+                Thread waiter;
+                while ((waiter = entitled.poll()) != null) {
+                    LockSupport.unpark(waiter);
+                }
+                return;
+            }
+        }
+    }
+
+    private void await(boolean on) throws InterruptedException {
+        long start = phase.get();
+        if (isOn(start) == on) {
+            return;
+        }
+        long target = start + 1;
+        for (int i = 0; i < SPINS; i++) {
+            if (phase.get() >= target) {
+                recordLatency(on);
+                return;
+            }
+        }
+        Queue<Thread> waiters = on ? onWaiters : offWaiters;
+        Thread me = Thread.currentThread();
+        while (phase.get() < target) {
+            waiters.add(me);
+            if (phase.get() < target) {
+                LockSupport.park(this);
+            }
+            waiters.remove(me);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        recordLatency(on);
+    }
+
+    private void recordLatency(boolean on) {
+        long nanos = System.nanoTime() - toggledAt.get(on ? 1 : 0);
+        if (nanos >= 0) {
+            latency.record(nanos);
+        }
+    }
+}
+
+/**
+ * Lock-free histogram with power-of-two nanosecond buckets: bucket i counts values in [2^(i-1), 2^i).
+ * Percentiles are reported as the upper bound of their bucket, i.e. within a factor of 2.
+ */
+class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    void record(long nanos) {
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /** @return upper bound in ns of the bucket holding the given percentile, 0 if empty */
+    long percentile(double percentile) {
+        long rank = (long) Math.ceil(count() * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return i == 63 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("handoffs=%d p50<=%dns p90<=%dns p99<=%dns p99.9<=%dns",
+                             count(), percentile(50), percentile(90), percentile(99), percentile(99.9));
+    }
+}
+
 class WorkerOn implements Runnable {
-    private SharedWorker sharedWorker;
-    public WorkerOn(SharedWorker w) { sharedWorker = w; }
+    private OnOffWorker sharedWorker;
+    public WorkerOn(OnOffWorker w) { sharedWorker = w; }
     public void run() {
         try {
             // same effect of leaving loop with an exception
             while(!Thread.interrupted()) {
                 System.out.println(String.format(
                         "Worker on %s - %s", Thread.currentThread().toString(), sharedWorker.getWorker()));
-                TimeUnit.MILLISECONDS.sleep(180);  // no release object lock
+                WaitNotifyAll.workOn();
                 sharedWorker.workerOn();
                 sharedWorker.waitForWorkerOff();
             }
@@ -69,14 +206,14 @@ class WorkerOn implements Runnable {
 }
 
 class WorkerOff implements Runnable {
-    private SharedWorker sharedWorker;
-    public WorkerOff(SharedWorker w) { sharedWorker = w; }
+    private OnOffWorker sharedWorker;
+    public WorkerOff(OnOffWorker w) { sharedWorker = w; }
     public void run() {
         try {
             while(!Thread.interrupted()) {
                 sharedWorker.waitForWorkerOn();
                 System.out.println("Worker off");
-                TimeUnit.MILLISECONDS.sleep(200);  // no release object lock
+                WaitNotifyAll.workOff();
                 sharedWorker.workerOff();
             }
         } catch (InterruptedException e) {
@@ -95,14 +232,140 @@ public class WaitNotifyAll {
      * Exiting via interrupt
      * Exiting via interrupt
      * Ending
+     *
+     * args "phase": same workers on the lock-free PhaseHandoff, followed by
+     * handoffs=22 p50<=262144ns p90<=524288ns p99<=1048576ns p99.9<=1048576ns
+     *
+     * args "virtual": PhaseHandoff workers on virtual threads, one per task (Java 21+)
+     *
+     * args "scale [pairs]": pairs (default 100000) independent on/off pairs on virtual threads (Java 21+),
+     * fails if a pair stalls or the heap per pair or the platform threads exceed their bounds
+     * 100000 pairs: 580283 round trips in 10 s, heap 3959 bytes per pair, 8 live platform threads
      */
     public static void main(String[] args) throws InterruptedException {
-        SharedWorker worker = new SharedWorker();
-        ExecutorService executorService = Executors.newCachedThreadPool();
+        String mode = args.length > 0 ? args[0] : "";
+        if ("scale".equals(mode)) {
+            scale(args.length > 1 ? Integer.parseInt(args[1]) : 100_000, newVirtualThreadExecutor());
+            return;
+        }
+        boolean phase = "phase".equals(mode) || "virtual".equals(mode);
+        OnOffWorker worker = phase ? new PhaseHandoff() : new SharedWorker();
+        ExecutorService executorService = "virtual".equals(mode) ? newVirtualThreadExecutor()
+                                                                 : Executors.newCachedThreadPool();
         executorService.execute(new WorkerOff(worker));
         executorService.execute(new WorkerOn(worker));
         executorService.execute(new WorkerOn(worker));
         TimeUnit.SECONDS.sleep(3);
         executorService.shutdownNow();  // Interrupt all tasks
+        if (phase) {
+            executorService.awaitTermination(1, TimeUnit.SECONDS);
+            System.out.println(((PhaseHandoff) worker).latency());
+        }
+    }
+
+    /**
+     * The work WorkerOn does for one token, without the handoff: its loop calls it once per token,
+     * a Pipeline stage once per batch with Pipeline.Stage.of(WaitNotifyAll::workOn).
+     */
+    static void workOn() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(180);  // no release object lock
+    }
+
+    /** The work WorkerOff does for one token, see workOn(). */
+    static void workOff() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(200);  // no release object lock
+    }
+
+    /** bound of scale(): heap of one parked pair, two virtual threads and their PhaseHandoff */
+    static final long MAX_HEAP_BYTES_PER_PAIR = 16 * 1024;
+    /** bound of scale(): platform threads besides one carrier per core (main, reference handler, finalizer, ...) */
+    static final int MAX_OTHER_PLATFORM_THREADS = 16;
+
+    /**
+     * Run many quiet WorkerOn/WorkerOff pairs, each pair on its own PhaseHandoff, for 10 seconds.
+     *
+     * A virtual thread blocked in synchronized/wait() pins its carrier thread, so SharedWorker would need
+     * one carrier per waiting worker. PhaseHandoff parks with LockSupport.park() and sleep() unmounts too:
+     * a waiting virtual thread is only a small heap object and 100k+ pairs share a few carriers.
+     *
+     * @throws IllegalStateException a pair made no round trip, the live heap grew by more than
+     *         MAX_HEAP_BYTES_PER_PAIR per pair, or more than one carrier per core + MAX_OTHER_PLATFORM_THREADS
+     *         platform threads were alive, e.g. because a worker pins its carrier
+     */
+    static void scale(int pairs, ExecutorService executorService) throws InterruptedException {
+        long heapBefore = liveHeap();
+        AtomicIntegerArray roundTrips = new AtomicIntegerArray(pairs);
+        for (int i = 0; i < pairs; i++) {
+            int pair = i;
+            PhaseHandoff handoff = new PhaseHandoff();
+            executorService.execute(() -> {
+                try {
+                    while (!Thread.interrupted()) {
+                        workOn();
+                        handoff.workerOn();
+                        handoff.waitForWorkerOff();
+                        roundTrips.incrementAndGet(pair);
+                    }
+                } catch (InterruptedException e) {
+                    // shut down
+                }
+            });
+            executorService.execute(() -> {
+                try {
+                    while (!Thread.interrupted()) {
+                        handoff.waitForWorkerOn();
+                        workOff();
+                        handoff.workerOff();
+                    }
+                } catch (InterruptedException e) {
+                    // shut down
+                }
+            });
+        }
+        TimeUnit.SECONDS.sleep(10);
+        long heapPerPair = (liveHeap() - heapBefore) / pairs;
+        int platformThreads = Thread.getAllStackTraces().size();  // virtual threads are not included
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        long total = 0;
+        int stalled = 0;
+        for (int i = 0; i < pairs; i++) {
+            total += roundTrips.get(i);
+            stalled += roundTrips.get(i) == 0 ? 1 : 0;
+        }
+        System.out.println(String.format("%d pairs: %d round trips in 10 s, heap %d bytes per pair, "
+                                         + "%d live platform threads", pairs, total, heapPerPair, platformThreads));
+        if (stalled > 0) {
+            throw new IllegalStateException(stalled + " of " + pairs + " pairs made no round trip in 10 s");
+        }
+        if (heapPerPair > MAX_HEAP_BYTES_PER_PAIR) {
+            throw new IllegalStateException("heap " + heapPerPair + " bytes per pair, bound "
+                                            + MAX_HEAP_BYTES_PER_PAIR);
+        }
+        int maxPlatformThreads = Runtime.getRuntime().availableProcessors() + MAX_OTHER_PLATFORM_THREADS;
+        if (platformThreads > maxPlatformThreads) {
+            throw new IllegalStateException(platformThreads + " live platform threads, bound " + maxPlatformThreads);
+        }
+    }
+
+    /** heap in use after a full collection: what is reachable, not the garbage of the handoffs */
+    private static long liveHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() through reflection: the sources stay on Java 8,
+     * virtual threads are used when the JVM running them has them.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
\ No newline at end of file
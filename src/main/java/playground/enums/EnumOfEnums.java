@@ -1,5 +1,9 @@
 package playground.enums;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class EnumOfEnums {
     /**
      * 1. group enum classes inside an interface.
@@ -12,6 +16,7 @@ public class EnumOfEnums {
 
     /**
      * 3. each enum takes class type to store all enum instances.
+     * 4. weighted(...) draws partition -> security by weight, see WeightedSampler.Hierarchy.
      */
     public enum SecurityPartition {
         STOCK(Security.Stock.class),
@@ -23,19 +28,56 @@ public class EnumOfEnums {
         public Security randomSelection() {
             return EnumsUtil.random(securities);
         }
+
+        public static SecurityPartition of(Security security) {
+            for (SecurityPartition partition : values()) {
+                if (partition.securities[0].getClass() == security.getClass()) {
+                    return partition;
+                }
+            }
+            throw new IllegalArgumentException("no partition for " + security);
+        }
+
+        /** @param weights joint weight of each security, e.g. Stock.LONG 80, Bond.JUNK 5 */
+        public static WeightedSampler.Hierarchy<SecurityPartition, Security> weighted(
+                Map<? extends Security, ? extends Number> weights) {
+            return WeightedSampler.Hierarchy.of(weights, SecurityPartition::of);
+        }
     }
 
     /*
-     * BOND: MUNICIPAL
-     * BOND: MUNICIPAL
-     * STOCK: MARGIN
-     * STOCK: MARGIN
      * BOND: JUNK
+     * STOCK: LONG
+     * BOND: JUNK
+     * BOND: JUNK
+     * BOND: MUNICIPAL
+     *
+     * LONG 80.02%, SHORT 5.00%, MARGIN 4.99%, MUNICIPAL 4.98%, JUNK 5.01%  (of 1000000 weighted draws)
      */
     public static void main(String[] args) {
+        EnumsUtil.seed(47);  // reproducible output
         for(int i = 0; i < 5; i++) {
             SecurityPartition securityPartition = EnumsUtil.random(SecurityPartition.class);
             System.out.println(securityPartition + ": " + securityPartition.randomSelection());
         }
+
+        Map<Security, Integer> weights = new LinkedHashMap<>();
+        weights.put(Security.Stock.LONG, 80);
+        weights.put(Security.Stock.SHORT, 5);
+        weights.put(Security.Stock.MARGIN, 5);
+        weights.put(Security.Bond.MUNICIPAL, 5);
+        weights.put(Security.Bond.JUNK, 5);
+        WeightedSampler.Hierarchy<SecurityPartition, Security> sampler = SecurityPartition.weighted(weights);
+        int draws = 1_000_000;
+        Map<Security, Integer> counts = new HashMap<>();
+        for (int i = 0; i < draws; i++) {
+            counts.merge(sampler.next(), 1, Integer::sum);
+        }
+        StringBuilder line = new StringBuilder();
+        for (Security security : weights.keySet()) {
+            line.append(line.length() == 0 ? "" : ", ")
+                .append(String.format("%s %.2f%%", security, 100.0 * counts.getOrDefault(security, 0) / draws));
+        }
+        System.out.println(line + "  (of " + draws + " weighted draws)");
     }
 }
@@ -1,17 +1,71 @@
 package playground.enums;
 
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A utility class to randomly choose a enum constant using generics.
+ *
+ * 1. no shared Random: every thread draws from its own source, nothing is CASed across threads
+ *    - default: ThreadLocalRandom
+ *    - after seed(s): a SplittableRandom per thread seeded from s and the thread id, reproducible per thread
+ * 2. the constants of each enum class are cached in a ClassValue: getEnumConstants() clones the array per call,
+ *    random(Class<T>) allocates nothing
  */
 public class EnumsUtil {
-    private static Random rand = new Random(47);
+    private static final ClassValue<Object[]> CONSTANTS = new ClassValue<Object[]>() {
+        @Override
+        protected Object[] computeValue(Class<?> type) {
+            return type.getEnumConstants();
+        }
+    };
+
+    /** null: ThreadLocalRandom */
+    private static volatile SeededSource seeded;
+
     public static <T extends Enum<T>> T random(Class<T> enumConstant) {
-        return random(enumConstant.getEnumConstants());
+        @SuppressWarnings("unchecked")
+        T[] values = (T[]) CONSTANTS.get(enumConstant);
+        return random(values);
     }
     public static <T> T random(T[] values) {
-        return values[rand.nextInt(values.length)];
+        return values[nextInt(values.length)];
+    }
+
+    /**
+     * Make the draws reproducible: from now on each thread restarts from its own seed, derived from
+     * seed and its thread id. Same seed, same thread, same calls: same sequence.
+     */
+    public static void seed(long seed) {
+        seeded = new SeededSource(seed);
+    }
+
+    /** Back to ThreadLocalRandom. */
+    public static void unseeded() {
+        seeded = null;
+    }
+
+    /** uniform in [0, bound) from the current thread's source */
+    static int nextInt(int bound) {
+        SeededSource source = seeded;
+        return source == null ? ThreadLocalRandom.current().nextInt(bound) : source.get().nextInt(bound);
+    }
+
+    /** uniform in [0, 1) from the current thread's source */
+    static double nextDouble() {
+        SeededSource source = seeded;
+        return source == null ? ThreadLocalRandom.current().nextDouble() : source.get().nextDouble();
+    }
+
+    private static final class SeededSource extends ThreadLocal<SplittableRandom> {
+        private final long seed;
+
+        SeededSource(long seed) { this.seed = seed; }
+
+        @Override
+        protected SplittableRandom initialValue() {
+            return new SplittableRandom(seed ^ Thread.currentThread().getId() * 0x9E3779B97F4A7C15L);
+        }
     }
 }
 
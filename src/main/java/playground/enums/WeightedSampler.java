@@ -0,0 +1,157 @@
+package playground.enums;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Weighted random selection in O(1) per draw: Walker's alias method (Vose's construction).
+ *
+ * 1. built once per weight table in O(n): n columns of height 1, column i keeps its own value
+ *    with probability prob[i] and gives the rest of its height to alias[i]
+ * 2. a draw is one uniform double u in [0, n): column (int) u, then u's fraction decides value or alias
+ * 3. the tables are immutable and the random numbers come from EnumsUtil's per-thread source,
+ *    one sampler is shared by any number of threads (and EnumsUtil.seed() makes it reproducible)
+ *
+ * Hierarchy samples a two-level structure, e.g. SecurityPartition -> Security:
+ * a weighted partition, then a weighted value inside it, still O(1).
+ */
+public class WeightedSampler<T> {
+    private final Object[] values;
+    private final double[] prob;
+    private final int[] alias;
+
+    private WeightedSampler(List<T> values, double[] weights) {
+        int n = values.size();
+        if (n == 0) {
+            throw new IllegalArgumentException("no values");
+        }
+        double total = 0;
+        for (double w : weights) {
+            if (!(w >= 0) || Double.isInfinite(w)) {
+                throw new IllegalArgumentException("weights must be finite and non-negative: " + w);
+            }
+            total += w;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("weights sum to 0");
+        }
+        this.values = values.toArray();
+        this.prob = new double[n];
+        this.alias = new int[n];
+
+        // scaled[i] = n * p(i): columns below 1 are small, filled up by a large one
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int s = small.pop();
+            int l = large.pop();
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = scaled[l] + scaled[s] - 1;
+            (scaled[l] < 1 ? small : large).push(l);
+        }
+        // left over columns are full, up to rounding
+        while (!large.isEmpty()) {
+            prob[large.pop()] = 1;
+        }
+        while (!small.isEmpty()) {
+            prob[small.pop()] = 1;
+        }
+    }
+
+    /** @param weights relative weights, in any unit; iteration order is kept */
+    public static <T> WeightedSampler<T> of(Map<? extends T, ? extends Number> weights) {
+        List<T> values = new ArrayList<>(weights.size());
+        double[] w = new double[weights.size()];
+        for (Map.Entry<? extends T, ? extends Number> entry : weights.entrySet()) {
+            w[values.size()] = entry.getValue().doubleValue();
+            values.add(entry.getKey());
+        }
+        return new WeightedSampler<>(values, w);
+    }
+
+    /** @param weights one relative weight per constant, in ordinal order */
+    public static <T extends Enum<T>> WeightedSampler<T> of(Class<T> type, double... weights) {
+        T[] constants = type.getEnumConstants();
+        if (weights.length != constants.length) {
+            throw new IllegalArgumentException(type.getSimpleName() + " has " + constants.length
+                                               + " constants, got " + weights.length + " weights");
+        }
+        List<T> values = new ArrayList<>(constants.length);
+        for (T constant : constants) {
+            values.add(constant);
+        }
+        return new WeightedSampler<>(values, weights.clone());
+    }
+
+    @SuppressWarnings("unchecked")
+    public T next() {
+        return (T) values[nextIndex()];
+    }
+
+    /** position of the drawn value in the weight table */
+    int nextIndex() {
+        double u = EnumsUtil.nextDouble() * values.length;
+        int column = (int) u;
+        return u - column < prob[column] ? column : alias[column];
+    }
+
+    /**
+     * Group-then-member sampling: a parent drawn by weight, then a child from that parent's own sampler.
+     * Built from joint weights, the draws have the same distribution as a flat sampler over the children.
+     */
+    public static final class Hierarchy<P, T> {
+        private final WeightedSampler<P> parents;
+        private final WeightedSampler<? extends T>[] children;
+
+        @SuppressWarnings("unchecked")
+        private Hierarchy(Map<P, Map<T, Double>> groups) {
+            Map<P, Double> parentWeights = new LinkedHashMap<>();
+            children = new WeightedSampler[groups.size()];
+            int i = 0;
+            for (Map.Entry<P, Map<T, Double>> group : groups.entrySet()) {
+                double total = 0;
+                for (double w : group.getValue().values()) {
+                    total += w;
+                }
+                parentWeights.put(group.getKey(), total);
+                children[i++] = WeightedSampler.of(group.getValue());
+            }
+            parents = WeightedSampler.of(parentWeights);
+        }
+
+        /**
+         * @param weights joint weight of each child
+         * @param parent  the group of a child, e.g. its SecurityPartition
+         */
+        public static <P, T> Hierarchy<P, T> of(Map<? extends T, ? extends Number> weights,
+                                                Function<? super T, ? extends P> parent) {
+            Map<P, Map<T, Double>> groups = new LinkedHashMap<>();
+            for (Map.Entry<? extends T, ? extends Number> entry : weights.entrySet()) {
+                double w = entry.getValue().doubleValue();
+                if (w > 0) {
+                    groups.computeIfAbsent(parent.apply(entry.getKey()), p -> new LinkedHashMap<>())
+                          .put(entry.getKey(), w);
+                }
+            }
+            if (groups.isEmpty()) {
+                throw new IllegalArgumentException("weights sum to 0");
+            }
+            return new Hierarchy<>(groups);
+        }
+
+        public T next() {
+            return children[parents.nextIndex()].next();
+        }
+    }
+}
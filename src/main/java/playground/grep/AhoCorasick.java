@@ -0,0 +1,143 @@
+package playground.grep;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over chars, finds all literals in one pass over the text.
+ *
+ * 1/ build a trie of all literals
+ * 2/ BFS to compute failure links; ASCII transitions are completed into a DFA (int[128] per state),
+ *    other chars fall back along failure links at scan time
+ * 3/ the output set of a state is its own literals plus the output set of its failure state
+ *
+ * Immutable once built, safe to share between threads.
+ */
+final class AhoCorasick {
+    interface Sink {
+        /** @param literal index into the literal list; [start, end) in the scanned text */
+        void hit(int literal, int start, int end);
+    }
+
+    private static final int ASCII = 128;
+    private static final int[] NONE = new int[0];
+
+    private final int[] lengths;
+    private final int[][] ascii;
+    private final List<Map<Character, Integer>> other;
+    private final int[] fail;
+    private final int[][] outputs;
+
+    AhoCorasick(List<String> literals) {
+        lengths = new int[literals.size()];
+        List<int[]> asciiBuild = new ArrayList<>();
+        List<Map<Character, Integer>> otherBuild = new ArrayList<>();
+        List<int[]> ownBuild = new ArrayList<>();
+        newState(asciiBuild, otherBuild, ownBuild);
+        for (int id = 0; id < literals.size(); id++) {
+            String literal = literals.get(id);
+            if (literal.isEmpty()) {
+                throw new IllegalArgumentException("Empty literal at " + id);
+            }
+            lengths[id] = literal.length();
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = literal.charAt(i);
+                int next = c < ASCII ? asciiBuild.get(state)[c] : otherBuild.get(state).getOrDefault(c, -1);
+                if (next < 0) {
+                    next = newState(asciiBuild, otherBuild, ownBuild);
+                    if (c < ASCII) {
+                        asciiBuild.get(state)[c] = next;
+                    } else {
+                        otherBuild.get(state).put(c, next);
+                    }
+                }
+                state = next;
+            }
+            int[] own = ownBuild.get(state);
+            own = Arrays.copyOf(own, own.length + 1);
+            own[own.length - 1] = id;
+            ownBuild.set(state, own);
+        }
+
+        int states = asciiBuild.size();
+        ascii = asciiBuild.toArray(new int[states][]);
+        other = otherBuild;
+        fail = new int[states];
+        outputs = new int[states][];
+        outputs[0] = ownBuild.get(0);
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ASCII; c++) {
+            if (ascii[0][c] < 0) {
+                ascii[0][c] = 0;
+            } else {
+                queue.add(ascii[0][c]);
+            }
+        }
+        queue.addAll(other.get(0).values());
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            int[] own = ownBuild.get(u);
+            int[] inherited = outputs[fail[u]];
+            int[] out = Arrays.copyOf(own, own.length + inherited.length);
+            System.arraycopy(inherited, 0, out, own.length, inherited.length);
+            outputs[u] = out;
+            for (int c = 0; c < ASCII; c++) {
+                int v = ascii[u][c];
+                if (v < 0) {
+                    ascii[u][c] = ascii[fail[u]][c];
+                } else {
+                    fail[v] = u == 0 ? 0 : ascii[fail[u]][c];
+                    queue.add(v);
+                }
+            }
+            for (Map.Entry<Character, Integer> edge : other.get(u).entrySet()) {
+                int v = edge.getValue();
+                fail[v] = u == 0 ? 0 : next(fail[u], edge.getKey());
+                queue.add(v);
+            }
+        }
+    }
+
+    int size() { return lengths.length; }
+
+    void scan(CharSequence text, int from, int to, Sink sink) {
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = next(state, text.charAt(i));
+            for (int literal : outputs[state]) {
+                sink.hit(literal, i + 1 - lengths[literal], i + 1);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        if (c < ASCII) {
+            return ascii[state][c];
+        }
+        while (true) {
+            Integer next = other.get(state).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    private static int newState(List<int[]> ascii, List<Map<Character, Integer>> other, List<int[]> own) {
+        int[] transitions = new int[ASCII];
+        Arrays.fill(transitions, -1);
+        ascii.add(transitions);
+        other.add(new HashMap<>());
+        own.add(NONE);
+        return ascii.size() - 1;
+    }
+}
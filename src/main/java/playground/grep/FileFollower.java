@@ -0,0 +1,129 @@
+package playground.grep;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follow a growing file like 'tail -F' and hand over only the complete lines appended since the last poll.
+ *
+ * 1/ remember the byte offset already consumed, each poll reads [offset, size) only
+ * 2/ a trailing partial line is kept until its terminator arrives, so a line is never split across polls
+ * 3/ rotation: a new file key (inode) or a size below the offset (copytruncate) restarts from offset 0
+ * 4/ a missing file is waited for, as 'tail -F' does
+ *
+ * Line terminators are the ones of BufferedReader.readLine(): \n, \r or \r\n, even across polls.
+ * Bytes still unread in a file that got rotated away are lost, as with 'tail -F'.
+ */
+public class FileFollower {
+    public static final long DEFAULT_POLL_MILLIS = 500;
+
+    private final Path file;
+    private final Charset charset;
+    private final long pollMillis;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private Object fileKey;
+    private long offset;
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean skipLF;
+
+    public FileFollower(Path file) {
+        this(file, Charset.defaultCharset(), DEFAULT_POLL_MILLIS);
+    }
+
+    public FileFollower(Path file, Charset charset, long pollMillis) {
+        this.file = file;
+        this.charset = charset;
+        this.pollMillis = pollMillis;
+    }
+
+    /** Poll until the current thread is interrupted. */
+    public void follow(LineHandler handler) throws IOException, InterruptedException {
+        follow(handler, () -> {});
+    }
+
+    /** Poll until the current thread is interrupted, the output is flushed after every poll that read data. */
+    public void follow(LineHandler handler, Flushable output) throws IOException, InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (poll(handler)) {
+                output.flush();
+            } else {
+                TimeUnit.MILLISECONDS.sleep(pollMillis);
+            }
+        }
+    }
+
+    /**
+     * Read what has been appended since the last call.
+     * @return true if any bytes were consumed
+     */
+    public boolean poll(LineHandler handler) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        Object key = attributes.fileKey();
+        if (attributes.size() < offset || fileKey != null && key != null && !Objects.equals(key, fileKey)) {
+            offset = 0;
+            pendingLength = 0;
+            skipLF = false;
+        }
+        fileKey = key;
+        if (attributes.size() == offset) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = offset;
+            int n;
+            buffer.clear();
+            while ((n = channel.read(buffer, offset)) > 0) {
+                offset += n;
+                buffer.flip();
+                consume(buffer, handler);
+                buffer.clear();
+            }
+            return offset > start;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /** @return bytes consumed so far in the current file */
+    public long offset() { return offset; }
+
+    private void consume(ByteBuffer bytes, LineHandler handler) throws IOException {
+        while (bytes.hasRemaining()) {
+            byte b = bytes.get();
+            if (skipLF) {
+                skipLF = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                skipLF = b == '\r';
+                handler.line(new String(pending, 0, pendingLength, charset));
+                pendingLength = 0;
+            } else {
+                if (pendingLength == pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                pending[pendingLength++] = b;
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package playground.grep;
+
+import java.io.IOException;
+
+/**
+ * Callback for one decoded input line, without its line terminator.
+ */
+public interface LineHandler {
+    void line(String line) throws IOException;
+}
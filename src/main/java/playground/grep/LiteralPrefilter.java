@@ -0,0 +1,350 @@
+package playground.grep;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Skip the lines that cannot match before they are decoded or seen by java.util.regex.
+ *
+ * 1/ extract the longest literal every match of the regex must contain, e.g. "ERROR \\d+ at (\\w+)" -> "ERROR "
+ * 2/ encode it with the file charset and look for it in the raw bytes with Boyer-Moore-Horspool
+ * 3/ only the line around a hit is decoded and handed over; all other lines are never touched
+ *
+ * The extraction is conservative, it gives up (returns null) on anything it does not fully understand:
+ * top-level alternation, case-insensitive or comments mode, inline flags, surrogates, ...
+ * A line without the literal bytes cannot contain the literal once decoded, so the output is unchanged.
+ *
+ * Only used with charsets where a literal always encodes to the same bytes: UTF-8, US-ASCII, ISO-8859-1.
+ */
+public class LiteralPrefilter {
+    static final int MIN_LITERAL_BYTES = 2;
+    private static final int REGION_SIZE = 64 << 20;
+
+    private final String literal;
+    private final byte[] needle;
+    private final int[] skip = new int[256];
+    private byte[] line = new byte[256];
+
+    private LiteralPrefilter(String literal, byte[] needle) {
+        this.literal = literal;
+        this.needle = needle;
+        Arrays.fill(skip, needle.length);
+        for (int i = 0; i < needle.length - 1; i++) {
+            skip[needle[i] & 0xff] = needle.length - 1 - i;
+        }
+    }
+
+    /** @return a prefilter for the pattern, or null if it has no usable required literal */
+    public static LiteralPrefilter of(Pattern pattern, Charset charset) {
+        if (!StandardCharsets.UTF_8.equals(charset) && !StandardCharsets.US_ASCII.equals(charset)
+                && !StandardCharsets.ISO_8859_1.equals(charset)) {
+            return null;
+        }
+        String literal = requiredLiteral(pattern.pattern(), pattern.flags());
+        if (literal == null || literal.indexOf('\n') >= 0 || literal.indexOf('\r') >= 0
+                || !charset.newEncoder().canEncode(literal)) {
+            return null;
+        }
+        byte[] needle = literal.getBytes(charset);
+        return needle.length < MIN_LITERAL_BYTES ? null : new LiteralPrefilter(literal, needle);
+    }
+
+    public String literal() { return literal; }
+
+    /** the encoded literal, not a copy */
+    byte[] bytes() { return needle; }
+
+    /**
+     * Map the file region by region and hand every line containing the literal to the handler, in order.
+     * Not thread-safe: the line buffer is reused.
+     */
+    public void grep(Path file, Charset charset, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long from = 0;
+            while (from < size) {
+                long to = ParallelChunkGrep.nextLineStart(channel, Math.min(from + REGION_SIZE, size), size);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                candidateLines(region, 0, region.limit(), charset, handler);
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * Hand every line of bytes[from, to) that contains the literal to the handler, without its terminator.
+     * Not thread-safe: the line buffer is reused.
+     */
+    public void candidateLines(ByteBuffer bytes, int from, int to, Charset charset, LineHandler handler)
+            throws IOException {
+        int pos = from;
+        int hit;
+        while ((hit = indexOf(bytes, pos, to)) >= 0) {
+            int lineStart = hit;
+            while (lineStart > pos && !isTerminator(bytes.get(lineStart - 1))) {
+                lineStart--;
+            }
+            int lineEnd = hit + needle.length;
+            while (lineEnd < to && !isTerminator(bytes.get(lineEnd))) {
+                lineEnd++;
+            }
+            int length = lineEnd - lineStart;
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                line[i] = bytes.get(lineStart + i);
+            }
+            handler.line(new String(line, 0, length, charset));
+            pos = lineEnd;
+        }
+    }
+
+    /** Boyer-Moore-Horspool: @return the first position of the needle in bytes[from, to), or -1 */
+    int indexOf(ByteBuffer bytes, int from, int to) {
+        int last = needle.length - 1;
+        byte lastByte = needle[last];
+        int i = from;
+        while (i <= to - needle.length) {
+            byte b = bytes.get(i + last);
+            if (b == lastByte) {
+                int j = last - 1;
+                while (j >= 0 && bytes.get(i + j) == needle[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += skip[b & 0xff];
+        }
+        return -1;
+    }
+
+    private static boolean isTerminator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * @return the longest literal contained in every match of the regex, or null if none can be proven
+     */
+    static String requiredLiteral(String regex, int flags) {
+        // before LITERAL: a case-insensitive literal pattern still matches "foo" for "Foo"
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+            return null;
+        }
+        if ((flags & Pattern.LITERAL) != 0) {
+            return hasSurrogate(regex) ? null : regex;
+        }
+        String best = "";
+        StringBuilder run = new StringBuilder();
+        int n = regex.length();
+        int i = 0;
+        while (i < n) {
+            char c = regex.charAt(i);
+            int atom = 0;  // number of literal chars this atom appended to the run
+            if (c == '\\') {
+                if (i + 1 >= n) {
+                    return null;
+                }
+                char e = regex.charAt(i + 1);
+                if (e == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+                    run.append(quoted);
+                    atom = quoted.length();
+                    i = end < 0 ? n : end + 2;
+                } else if (Character.isLetterOrDigit(e)) {
+                    // \w \d \b \1 \x41 \p{L} ...: not a plain literal
+                    best = longer(best, run);
+                    i = skipEscape(regex, i);
+                } else {
+                    run.append(e);
+                    atom = 1;
+                    i += 2;
+                }
+            } else if (c == '[') {
+                best = longer(best, run);
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                if (i + 2 < n && regex.charAt(i + 1) == '?'
+                        && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                    return null;  // inline flags, e.g. (?i)
+                }
+                best = longer(best, run);
+                i = skipGroup(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (c == '|' || c == ')') {
+                return null;
+            } else if (c == '.' || c == '^' || c == '$' || c == '*' || c == '+' || c == '?' || c == '{') {
+                best = longer(best, run);
+                i++;
+            } else {
+                run.append(c);
+                atom = 1;
+                i++;
+            }
+
+            if (i < n && isQuantifier(regex, i)) {
+                if (atom > 0 && isOptional(regex, i)) {
+                    run.setLength(run.length() - 1);  // a quantifier binds to the last char only
+                }
+                best = longer(best, run);
+                i = skipQuantifier(regex, i);
+            }
+        }
+        best = longer(best, run);
+        return best.isEmpty() || hasSurrogate(best) ? null : best;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        String result = run.length() > best.length() ? run.toString() : best;
+        run.setLength(0);
+        return result;
+    }
+
+    private static boolean hasSurrogate(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isSurrogate(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isQuantifier(String regex, int i) {
+        char c = regex.charAt(i);
+        return c == '*' || c == '+' || c == '?' || c == '{';
+    }
+
+    private static boolean isOptional(String regex, int i) {
+        char c = regex.charAt(i);
+        if (c == '{') {
+            int j = i + 1;
+            while (j < regex.length() && regex.charAt(j) == '0') {
+                j++;
+            }
+            return j > i + 1 && j < regex.length() && !Character.isDigit(regex.charAt(j));
+        }
+        return c == '*' || c == '?';
+    }
+
+    /** @return position after the quantifier including a trailing lazy '?' or possessive '+' */
+    private static int skipQuantifier(String regex, int i) {
+        if (regex.charAt(i) == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+        } else {
+            i++;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    /** @param i position of a backslash followed by a letter or digit */
+    private static int skipEscape(String regex, int i) {
+        int n = regex.length();
+        char e = regex.charAt(i + 1);
+        switch (e) {
+            case 'x':
+            case 'p':
+            case 'P':
+            case 'N':
+                if (i + 2 < n && regex.charAt(i + 2) == '{') {
+                    int end = regex.indexOf('}', i);
+                    return end < 0 ? n : end + 1;
+                }
+                return Math.min(n, i + (e == 'x' ? 4 : 3));
+            case 'u':
+                return Math.min(n, i + 6);
+            case 'c':
+                return Math.min(n, i + 3);
+            case 'k': {
+                int end = regex.indexOf('>', i);
+                return end < 0 ? n : end + 1;
+            }
+            default:
+                if (Character.isDigit(e)) {
+                    // back reference or octal escape, its digits are not literals
+                    int j = i + 2;
+                    while (j < n && Character.isDigit(regex.charAt(j))) {
+                        j++;
+                    }
+                    return j;
+                }
+                return i + 2;
+        }
+    }
+
+    /** @return position after the character class starting at i, nested classes included */
+    private static int skipClass(String regex, int i) {
+        int n = regex.length();
+        int depth = 0;
+        int j = i;
+        while (j < n) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                j++;
+                if (j < n && regex.charAt(j) == '^') {
+                    j++;
+                }
+                if (j < n && regex.charAt(j) == ']') {
+                    j++;  // a leading ']' is a literal member
+                }
+                continue;
+            }
+            if (c == ']' && --depth == 0) {
+                return j + 1;
+            }
+            j++;
+        }
+        return n;
+    }
+
+    /** @return position after the group starting at i, or -1 if it is unbalanced */
+    private static int skipGroup(String regex, int i) {
+        int n = regex.length();
+        int depth = 0;
+        int j = i;
+        while (j < n) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                if (j + 1 < n && regex.charAt(j + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", j + 2);
+                    j = end < 0 ? n : end + 2;
+                } else {
+                    j += 2;
+                }
+                continue;
+            }
+            if (c == '[') {
+                j = skipClass(regex, j);
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return j + 1;
+            }
+            j++;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,192 @@
+package playground.grep;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Batched, allocation-free sink for "index: group: start" lines.
+ *
+ * System.out.println(index + ": " + m.group() + ": " + m.start()) builds several Strings per match
+ * and takes the PrintStream lock on every call. Instead:
+ * 1/ numbers are formatted straight into a reusable ByteBuffer
+ * 2/ the match is copied from its CharSequence bounds, no group() String
+ * 3/ the buffer goes out in large blocks through a WritableByteChannel
+ *
+ * ASCII chars are stored directly for ASCII-compatible charsets, everything else goes through
+ * a reused CharsetEncoder; unmappable chars become '?' like PrintStream does.
+ *
+ * A write the channel refuses, e.g. EPIPE once the reader of a pipe is gone ("| head -1"), is thrown as
+ * ClosedOutputException: there is nobody left to write to, callers stop and exit quietly like grep does.
+ * The writer drops everything after that, close() does not throw it a second time.
+ *
+ * Not thread-safe; call flush() before the output is expected to be visible.
+ */
+public class MatchWriter implements Flushable, Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] SEPARATOR = {':', ' '};
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+    private final boolean asciiCompatible;
+    private final byte[] lineSeparator;
+    private final byte[] digits = new byte[20];
+    private final CharBuffer chars = CharBuffer.allocate(256);
+    private boolean outputClosed;
+
+    public MatchWriter(WritableByteChannel channel) {
+        this(channel, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public MatchWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("bufferSize too small: " + bufferSize);
+        }
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.encoder = charset.newEncoder()
+                              .onMalformedInput(CodingErrorAction.REPLACE)
+                              .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+        this.lineSeparator = System.lineSeparator().getBytes(charset);
+    }
+
+    /** A writer on the process stdout, bypassing System.out. */
+    public static MatchWriter stdout() {
+        return new MatchWriter(Channels.newChannel(new FileOutputStream(FileDescriptor.out)));
+    }
+
+    /** "index: text[start, end): offset" */
+    public void write(long index, CharSequence text, int start, int end, int offset) throws IOException {
+        writeNumber(index);
+        writeBytes(SEPARATOR);
+        writeChars(text, start, end);
+        writeBytes(SEPARATOR);
+        writeNumber(offset);
+        writeBytes(lineSeparator);
+    }
+
+    /** "index: patternId: text[start, end): offset" */
+    public void write(long index, int patternId, CharSequence text, int start, int end, int offset)
+            throws IOException {
+        writeNumber(index);
+        writeBytes(SEPARATOR);
+        writeNumber(patternId);
+        writeBytes(SEPARATOR);
+        writeChars(text, start, end);
+        writeBytes(SEPARATOR);
+        writeNumber(offset);
+        writeBytes(lineSeparator);
+    }
+
+    /** @throws ClosedOutputException the channel refused the write, now or earlier */
+    @Override
+    public void flush() throws IOException {
+        if (outputClosed) {
+            buffer.clear();
+            throw new ClosedOutputException(null);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            outputClosed = true;
+            throw new ClosedOutputException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /** Flush, the channel is left open: it is usually stdout. A refused write was already reported by flush(). */
+    @Override
+    public void close() throws IOException {
+        if (!outputClosed) {
+            flush();
+        }
+    }
+
+    /** Nobody reads the output any more, see the class comment. */
+    public static final class ClosedOutputException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ClosedOutputException(IOException cause) {
+            super("Output closed", cause);
+        }
+    }
+
+    /** @param value non-negative */
+    private void writeNumber(long value) throws IOException {
+        ensure(digits.length);
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, pos, digits.length - pos);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeChars(CharSequence text, int start, int end) throws IOException {
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (asciiCompatible && c < 0x80) {
+                ensure(1);
+                buffer.put((byte) c);
+                i++;
+            } else {
+                i = encode(text, i, end);
+            }
+        }
+    }
+
+    /** Encode the non-ASCII run starting at i through the CharsetEncoder. @return position after the run */
+    private int encode(CharSequence text, int i, int end) throws IOException {
+        chars.clear();
+        while (i < end && chars.hasRemaining() && !(asciiCompatible && text.charAt(i) < 0x80)) {
+            chars.put(text.charAt(i++));
+        }
+        // keep a high surrogate together with its low surrogate
+        if (i < end && Character.isHighSurrogate(chars.get(chars.position() - 1))) {
+            if (chars.hasRemaining()) {
+                chars.put(text.charAt(i++));
+            } else {
+                chars.position(chars.position() - 1);
+                i--;
+            }
+        }
+        chars.flip();
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+        return i;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
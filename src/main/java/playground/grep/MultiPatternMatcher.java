@@ -0,0 +1,177 @@
+package playground.grep;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Match many patterns against the same text in one pass.
+ *
+ * 1/ literal patterns (no regex meta characters, or \Q...\E) go into one Aho-Corasick automaton
+ * 2/ the real regexes fall back to java.util.regex, one Matcher each
+ * 3/ every hit is tagged with the pattern id, i.e. the position of the pattern in the input list
+ *
+ * Each pattern reports the same hits as if it were run on its own with Matcher.find():
+ * a literal's occurrences never overlap each other.
+ * Within a line hits are reported by start offset, then by pattern id.
+ *
+ * The compiled matcher is immutable; use one Scanner per thread.
+ */
+public class MultiPatternMatcher {
+    private static final String META = "\\^$.|?*+()[]{}";
+
+    private final List<String> patterns;
+    private final AhoCorasick literals;
+    private final int[] literalIds;
+    private final Pattern[] regexes;
+    private final int[] regexIds;
+
+    public interface HitSink {
+        /** @param patternId position of the pattern in the input list; [start, end) in the scanned text */
+        void hit(int patternId, int start, int end) throws IOException;
+    }
+
+    private MultiPatternMatcher(List<String> patterns) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        List<String> literalList = new ArrayList<>();
+        List<Integer> literalIdList = new ArrayList<>();
+        List<Pattern> regexList = new ArrayList<>();
+        List<Integer> regexIdList = new ArrayList<>();
+        for (int id = 0; id < patterns.size(); id++) {
+            String literal = literalOf(patterns.get(id));
+            if (literal != null) {
+                literalList.add(literal);
+                literalIdList.add(id);
+            } else {
+                regexList.add(Pattern.compile(patterns.get(id)));
+                regexIdList.add(id);
+            }
+        }
+        literals = new AhoCorasick(literalList);
+        literalIds = literalIdList.stream().mapToInt(Integer::intValue).toArray();
+        regexes = regexList.toArray(new Pattern[0]);
+        regexIds = regexIdList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static MultiPatternMatcher compile(List<String> patterns) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("No patterns");
+        }
+        return new MultiPatternMatcher(patterns);
+    }
+
+    /** One pattern per line, blank lines are skipped. */
+    public static List<String> readPatternFile(Path file) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isEmpty()) {
+                patterns.add(line);
+            }
+        }
+        return patterns;
+    }
+
+    public int patternCount() { return patterns.size(); }
+    public String pattern(int id) { return patterns.get(id); }
+    public int literalCount() { return literals.size(); }
+
+    public Scanner scanner() { return new Scanner(); }
+
+    /**
+     * @return the literal text the pattern matches, or null if it needs the regex engine
+     */
+    static String literalOf(String regex) {
+        if (regex.startsWith("\\Q") && regex.endsWith("\\E") && regex.indexOf("\\E") == regex.length() - 2) {
+            String quoted = regex.substring(2, regex.length() - 2);
+            return quoted.isEmpty() ? null : quoted;
+        }
+        if (regex.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < regex.length(); i++) {
+            if (META.indexOf(regex.charAt(i)) >= 0) {
+                return null;
+            }
+        }
+        return regex;
+    }
+
+    /**
+     * Per-thread matching state: reused Matchers and hit buffers. Not thread-safe.
+     */
+    public class Scanner {
+        private final Matcher[] matchers = new Matcher[regexes.length];
+        private final int[] literalEnds = new int[literals.size()];
+        private final AhoCorasick.Sink literalSink = (literal, start, end) -> {
+            if (start >= literalEnds[literal]) {
+                literalEnds[literal] = end;
+                add(literalIds[literal], start, end);
+            }
+        };
+        private int[] hits = new int[3 * 16];
+        private int hitCount;
+
+        private Scanner() {
+            for (int i = 0; i < regexes.length; i++) {
+                matchers[i] = regexes[i].matcher("");
+            }
+        }
+
+        /**
+         * Report the hits of all patterns within text[from, to), ordered by start then pattern id.
+         * Regex bounds are opaque and anchoring, so the region behaves like a standalone line.
+         */
+        public void scan(CharSequence text, int from, int to, HitSink sink) throws IOException {
+            hitCount = 0;
+            if (literalEnds.length > 0) {
+                Arrays.fill(literalEnds, from);
+                literals.scan(text, from, to, literalSink);
+            }
+            for (int i = 0; i < matchers.length; i++) {
+                Matcher m = matchers[i];
+                m.reset(text);
+                m.region(from, to);
+                while (m.find()) {
+                    add(regexIds[i], m.start(), m.end());
+                }
+            }
+            sort();
+            for (int i = 0; i < hitCount; i++) {
+                sink.hit(hits[3 * i], hits[3 * i + 1], hits[3 * i + 2]);
+            }
+        }
+
+        private void add(int patternId, int start, int end) {
+            if (3 * hitCount == hits.length) {
+                hits = Arrays.copyOf(hits, hits.length * 2);
+            }
+            hits[3 * hitCount] = patternId;
+            hits[3 * hitCount + 1] = start;
+            hits[3 * hitCount + 2] = end;
+            hitCount++;
+        }
+
+        /** insertion sort on (start, patternId): each pattern's hits are already in order */
+        private void sort() {
+            for (int i = 1; i < hitCount; i++) {
+                int id = hits[3 * i], start = hits[3 * i + 1], end = hits[3 * i + 2];
+                int j = i - 1;
+                while (j >= 0 && (hits[3 * j + 1] > start || hits[3 * j + 1] == start && hits[3 * j] > id)) {
+                    hits[3 * (j + 1)] = hits[3 * j];
+                    hits[3 * (j + 1) + 1] = hits[3 * j + 1];
+                    hits[3 * (j + 1) + 2] = hits[3 * j + 2];
+                    j--;
+                }
+                hits[3 * (j + 1)] = id;
+                hits[3 * (j + 1) + 1] = start;
+                hits[3 * (j + 1) + 2] = end;
+            }
+        }
+    }
+}
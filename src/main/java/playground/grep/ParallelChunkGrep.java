@@ -0,0 +1,237 @@
+package playground.grep;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Memory-mapped, chunked version of RegexJGrep.
+ *
+ * 1/ split the file into ~chunkSize regions; each boundary is moved forward to the byte after the next '\n'
+ * 2/ every chunk is mapped on its own with FileChannel.map, so files larger than 2GB are fine
+ * 3/ chunks are decoded and matched on a ForkJoinPool; each worker thread reuses one Matcher
+ * 4/ a line is matched with Matcher.region() over the decoded chunk, no String per line;
+ *    default opaque + anchoring bounds make ^, $ and \b behave exactly as on a readLine() String
+ * 5/ chunk results are joined in chunk order, so the output equals the sequential scan
+ * 6/ with a MultiPatternMatcher every pattern is matched in the same pass and hits are
+ *    printed as "index: patternId: group: start"
+ * 7/ a single regex with a required literal only decodes the lines whose bytes contain it, see LiteralPrefilter
+ *
+ * Only a bounded window of chunks is in flight, the memory stays flat for multi-GB files.
+ * Line splitting on raw bytes assumes an ASCII-compatible charset (UTF-8, ISO-8859-x, ...).
+ */
+public class ParallelChunkGrep {
+    public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    private final Pattern pattern;
+    private final MultiPatternMatcher patterns;
+    private final Charset charset;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Matcher> matchers;
+    private final ThreadLocal<MultiPatternMatcher.Scanner> scanners;
+    private final ThreadLocal<LiteralPrefilter> prefilters;
+
+    public ParallelChunkGrep(Pattern pattern) {
+        this(pattern, Charset.defaultCharset(), DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public ParallelChunkGrep(MultiPatternMatcher patterns) {
+        this(patterns, Charset.defaultCharset(), DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public ParallelChunkGrep(Pattern pattern, Charset charset, int chunkSize, ForkJoinPool pool) {
+        this(pattern, null, charset, chunkSize, pool);
+    }
+
+    public ParallelChunkGrep(MultiPatternMatcher patterns, Charset charset, int chunkSize, ForkJoinPool pool) {
+        this(null, patterns, charset, chunkSize, pool);
+    }
+
+    private ParallelChunkGrep(Pattern pattern, MultiPatternMatcher patterns,
+                              Charset charset, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.pattern = pattern;
+        this.patterns = patterns;
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+        this.matchers = ThreadLocal.withInitial(() -> this.pattern.matcher(""));
+        this.scanners = ThreadLocal.withInitial(() -> this.patterns.scanner());
+        this.prefilters = ThreadLocal.withInitial(() -> LiteralPrefilter.of(this.pattern, this.charset));
+    }
+
+    /**
+     * Print every match as "index: group: start" (or "index: patternId: group: start") in input order.
+     * @return the number of matches
+     */
+    public long grep(Path file, MatchWriter out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int window = Math.max(2, pool.getParallelism() * 2);
+            Deque<ForkJoinTask<List<Hit>>> inFlight = new ArrayDeque<>();
+            long index = 0;
+            long from = 0;
+            try {
+                while (from < size || !inFlight.isEmpty()) {
+                    while (from < size && inFlight.size() < window) {
+                        long to = nextLineStart(channel, Math.min(from + chunkSize, size), size);
+                        final long start = from;
+                        inFlight.add(pool.submit(() -> scan(channel, start, to)));
+                        from = to;
+                    }
+                    for (Hit hit : await(inFlight.poll())) {
+                        if (patterns == null) {
+                            out.write(index++, hit.text, hit.start, hit.end, hit.offset);
+                        } else {
+                            out.write(index++, hit.patternId, hit.text, hit.start, hit.end, hit.offset);
+                        }
+                    }
+                }
+            } finally {
+                // stopped early (e.g. the output was closed): the chunks read ahead are not needed any more
+                for (ForkJoinTask<List<Hit>> task : inFlight) {
+                    task.cancel(false);
+                }
+            }
+            return index;
+        }
+    }
+
+    private List<Hit> scan(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        List<Hit> hits = new ArrayList<>();
+        LiteralPrefilter prefilter = patterns == null ? prefilters.get() : null;
+        if (prefilter != null) {
+            Matcher m = matchers.get();
+            prefilter.candidateLines(bytes, 0, bytes.limit(), charset, line -> {
+                m.reset(line);
+                while (m.find()) {
+                    hits.add(new Hit(-1, line, m.start(), m.end(), m.start()));
+                }
+            });
+            m.reset("");
+            return hits;
+        }
+        // FileReader replaces malformed input, so does this decoder
+        CharBuffer chars = charset.newDecoder()
+                                  .onMalformedInput(CodingErrorAction.REPLACE)
+                                  .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                                  .decode(bytes);
+        if (patterns == null) {
+            matchers.get().reset(chars);
+        }
+        int length = chars.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineEnd(chars, lineStart);
+            matchLine(chars, lineStart, lineEnd, hits);
+            lineStart = nextLine(chars, lineEnd);
+        }
+        if (patterns == null) {
+            matchers.get().reset("");  // drop the reference to the chunk
+        }
+        return hits;
+    }
+
+    private void matchLine(CharBuffer chars, int lineStart, int lineEnd, List<Hit> hits) throws IOException {
+        if (patterns == null) {
+            Matcher m = matchers.get();
+            m.region(lineStart, lineEnd);
+            while (m.find()) {
+                hits.add(new Hit(-1, chars, m.start(), m.end(), m.start() - lineStart));
+            }
+        } else {
+            scanners.get().scan(chars, lineStart, lineEnd, (id, start, end) ->
+                    hits.add(new Hit(id, chars, start, end, start - lineStart)));
+        }
+    }
+
+    /** @return position of the terminator of the line starting at pos, or the length */
+    private static int lineEnd(CharBuffer chars, int pos) {
+        int length = chars.length();
+        while (pos < length) {
+            char c = chars.charAt(pos);
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    /** same line terminators as BufferedReader.readLine(): \n, \r or \r\n */
+    private static int nextLine(CharBuffer chars, int lineEnd) {
+        int length = chars.length();
+        if (lineEnd < length && chars.charAt(lineEnd++) == '\r' && lineEnd < length && chars.charAt(lineEnd) == '\n') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    /** @return position right after the first '\n' at or after pos, or size */
+    static long nextLineStart(FileChannel channel, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    private static <T> T await(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** a match as bounds into its decoded chunk or line, the group is never copied */
+    private static final class Hit {
+        private final int patternId;
+        private final CharSequence text;
+        private final int start;
+        private final int end;
+        private final int offset;
+        Hit(int patternId, CharSequence text, int start, int end, int offset) {
+            this.patternId = patternId;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package playground.grep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Persistent trigram index next to an input file ("app.log" -> "app.log.trigrams"), as in code search:
+ * a query only reads the blocks that can contain its required literal.
+ *
+ * 1/ the file is cut into line-aligned blocks of ~blockSize bytes
+ * 2/ for every byte trigram that occurs inside a line, the sidecar keeps the sorted ids of the blocks containing it
+ * 3/ a query intersects the posting lists of the trigrams of the pattern's required literal (see LiteralPrefilter)
+ *    and only maps and scans the candidate blocks, in file order, so the output equals a full scan
+ * 4/ the sidecar records the size and mtime of the input file and is rebuilt when either changed
+ * 5/ build is an external sort: (trigram, block) pairs of a range of blocks are sorted in memory and written
+ *    as a run, the runs are merged into the sidecar, memory stays ~8 * runPairs bytes whatever the file size
+ *
+ * Sidecar layout, big-endian:
+ * header   int magic, int version, long sourceSize, long sourceMtime, int blockCount, int trigramCount
+ * offsets  long[blockCount + 1]                    block i is [offsets[i], offsets[i + 1])
+ * table    (int trigram, long start, int count)[]  sorted by trigram, start/count index into postings
+ * postings int[]
+ *
+ * The sidecar is read with positional reads, a table probe or a posting list is one read;
+ * nothing is mapped or loaded up front and no position is limited to 2 GB.
+ */
+public class TrigramIndex implements Closeable {
+    public static final String SUFFIX = ".trigrams";
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    /** pairs per sorted run, 32 MB */
+    static final int RUN_PAIRS = 4 << 20;
+    /** runs merged at once, more are merged in several passes */
+    private static final int FAN_IN = 64;
+    private static final int MAGIC = 0x54524947;  // "TRIG"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+
+    private final Path file;
+    private final FileChannel index;
+    private final int blockCount;
+    private final int trigramCount;
+    private final long tablePos;
+    private final long postingsPos;
+
+    private TrigramIndex(Path file, FileChannel index) throws IOException {
+        ByteBuffer header = read(index, 0, HEADER_SIZE);
+        this.file = file;
+        this.index = index;
+        this.blockCount = header.getInt(24);
+        this.trigramCount = header.getInt(28);
+        this.tablePos = HEADER_SIZE + 8L * (blockCount + 1);
+        this.postingsPos = tablePos + (long) ENTRY_SIZE * trigramCount;
+    }
+
+    public static Path sidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /** Open the sidecar of the file, (re)building it when it is missing or stale. */
+    public static TrigramIndex open(Path file) throws IOException {
+        Path sidecar = sidecar(file);
+        if (!isFresh(file, sidecar)) {
+            build(file, sidecar, DEFAULT_BLOCK_SIZE);
+        }
+        FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ);
+        try {
+            return new TrigramIndex(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** @return whether the literal is long enough for the index to skip blocks, shorter ones read every block */
+    public static boolean narrows(LiteralPrefilter prefilter) {
+        return prefilter.bytes().length >= 3;
+    }
+
+    static boolean isFresh(Path file, Path sidecar) throws IOException {
+        if (!Files.exists(sidecar) || Files.size(sidecar) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            return header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getLong(8) == Files.size(file)
+                    && header.getLong(16) == Files.getLastModifiedTime(file).toMillis();
+        }
+    }
+
+    /**
+     * Scan the file once and write its sidecar. Runs and the new sidecar are staged in a build directory of their own
+     * next to the sidecar, then the sidecar is moved into place: concurrent builds do not share a file and a failed one
+     * leaves nothing behind.
+     */
+    public static void build(Path file, Path sidecar, int blockSize) throws IOException {
+        build(file, sidecar, blockSize, RUN_PAIRS);
+    }
+
+    static void build(Path file, Path sidecar, int blockSize, int runPairs) throws IOException {
+        long sourceSize = Files.size(file);
+        long sourceMtime = Files.getLastModifiedTime(file).toMillis();
+        Path dir = sidecar.toAbsolutePath().getParent();
+        Path work = Files.createTempDirectory(dir, sidecar.getFileName() + ".build");
+        Throwable failure = null;
+        try {
+            LongList offsets = new LongList();
+            List<Path> runs = new ArrayList<>();
+            // pair = trigram << 32 | block id, sorting the pairs sorts by trigram, then block
+            long[] pairs = new long[runPairs];
+            int n = 0;
+            BitSet seen = new BitSet(1 << 24);
+            IntList touched = new IntList();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long from = 0;
+                offsets.add(from);
+                while (from < sourceSize) {
+                    long to = ParallelChunkGrep.nextLineStart(channel, Math.min(from + blockSize, sourceSize),
+                                                              sourceSize);
+                    MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                    int blockId = offsets.size - 1;
+                    collectTrigrams(block, seen, touched);
+                    if (n + touched.size > pairs.length) {
+                        runs.add(writeRun(work, runs.size(), pairs, n));
+                        n = 0;
+                        if (touched.size > pairs.length) {
+                            pairs = new long[touched.size];  // a block never spans two runs
+                        }
+                    }
+                    for (int i = 0; i < touched.size; i++) {
+                        int trigram = touched.values[i];
+                        pairs[n++] = (long) trigram << 32 | blockId;
+                        seen.clear(trigram);
+                    }
+                    touched.size = 0;
+                    offsets.add(to);
+                    from = to;
+                }
+            }
+            if (n > 0) {
+                runs.add(writeRun(work, runs.size(), pairs, n));
+            }
+            pairs = null;  // let the run buffer go before merging
+
+            while (runs.size() > FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += FAN_IN) {
+                    Path run = work.resolve("merge-" + merged.size() + "-" + runs.size());
+                    try (DataOutputStream out = output(run)) {
+                        merge(runs.subList(i, Math.min(i + FAN_IN, runs.size())), out::writeLong);
+                    }
+                    merged.add(run);
+                }
+                for (Path run : runs) {
+                    Files.delete(run);
+                }
+                runs = merged;
+            }
+
+            Path table = work.resolve("table");
+            Path postings = work.resolve("postings");
+            int trigramCount;
+            try (DataOutputStream tableOut = output(table); DataOutputStream postingsOut = output(postings)) {
+                TableWriter writer = new TableWriter(tableOut, postingsOut);
+                merge(runs, writer);
+                trigramCount = writer.finish();
+            }
+
+            Path tmp = work.resolve("sidecar");  // same file system as the sidecar: the move stays atomic
+            try (DataOutputStream out = output(tmp)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceMtime);
+                out.writeInt(offsets.size - 1);
+                out.writeInt(trigramCount);
+                for (int i = 0; i < offsets.size; i++) {
+                    out.writeLong(offsets.values[i]);
+                }
+                Files.copy(table, out);
+                Files.copy(postings, out);
+            }
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            delete(work, failure);
+        }
+    }
+
+    /** Delete the build directory; if the build failed, an error here is added to its exception, not thrown. */
+    private static void delete(Path work, Throwable failure) throws IOException {
+        try {
+            try (Stream<Path> left = Files.list(work)) {
+                for (Path path : (Iterable<Path>) left::iterator) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(work);
+        } catch (IOException e) {
+            if (failure == null) {
+                throw e;
+            }
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static Path writeRun(Path work, int id, long[] pairs, int n) throws IOException {
+        Arrays.sort(pairs, 0, n);
+        Path run = work.resolve("run-" + id);
+        try (DataOutputStream out = output(run)) {
+            for (int i = 0; i < n; i++) {
+                out.writeLong(pairs[i]);
+            }
+        }
+        return run;
+    }
+
+    private interface PairSink {
+        void accept(long pair) throws IOException;
+    }
+
+    /** k-way merge of sorted runs of pairs into the sink, in order */
+    private static void merge(List<Path> runs, PairSink sink) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                                                             Comparator.comparingLong(r -> r.head));
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) {
+                    heads.add(reader);
+                } else {
+                    reader.in.close();
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                sink.accept(reader.head);
+                if (reader.advance()) {
+                    heads.add(reader);
+                } else {
+                    reader.in.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : heads) {
+                reader.in.close();
+            }
+        }
+    }
+
+    private static DataOutputStream output(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+    }
+
+    /** positional read of length bytes, the channel position is not used */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated index at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int blockCount() { return blockCount; }
+
+    /**
+     * Hand every line containing the prefilter literal to the handler, in file order,
+     * reading only the blocks that hold all of the literal's trigrams.
+     */
+    public void grep(LiteralPrefilter prefilter, Charset charset, LineHandler handler) throws IOException {
+        int[] blocks = candidateBlocks(prefilter.bytes());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int block : blocks) {
+                ByteBuffer bounds = read(index, HEADER_SIZE + 8L * block, 16);
+                long from = bounds.getLong(0);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, from, bounds.getLong(8) - from);
+                prefilter.candidateLines(region, 0, region.limit(), charset, handler);
+            }
+        }
+    }
+
+    /** @return ids of the blocks that contain every trigram of the literal, all blocks if it is too short */
+    int[] candidateBlocks(byte[] literal) throws IOException {
+        if (literal.length < 3) {
+            int[] all = new int[blockCount];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        int[] result = null;
+        for (int i = 0; i + 2 < literal.length; i++) {
+            int[] blocks = postings(trigram(literal[i], literal[i + 1], literal[i + 2]));
+            result = result == null ? blocks : intersect(result, blocks);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** binary search the trigram table, one read per probe and one for the posting list */
+    private int[] postings(int trigram) throws IOException {
+        int lo = 0;
+        int hi = trigramCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            ByteBuffer entry = read(index, tablePos + (long) ENTRY_SIZE * mid, ENTRY_SIZE);
+            int key = entry.getInt(0);
+            if (key < trigram) {
+                lo = mid + 1;
+            } else if (key > trigram) {
+                hi = mid - 1;
+            } else {
+                long start = entry.getLong(4);
+                int[] blocks = new int[entry.getInt(12)];
+                read(index, postingsPos + 4 * start, 4 * blocks.length).asIntBuffer().get(blocks);
+                return blocks;
+            }
+        }
+        return new int[0];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** the distinct trigrams of one block, lines never contribute a terminator to a trigram */
+    private static void collectTrigrams(ByteBuffer block, BitSet seen, IntList touched) {
+        int run = 0;  // bytes since the last line terminator
+        int window = 0;
+        for (int i = 0; i < block.limit(); i++) {
+            byte b = block.get(i);
+            if (b == '\n' || b == '\r') {
+                run = 0;
+                continue;
+            }
+            window = ((window << 8) | (b & 0xff)) & 0xffffff;
+            if (++run >= 3 && !seen.get(window)) {
+                seen.set(window);
+                touched.add(window);
+            }
+        }
+    }
+
+    private static int trigram(byte b0, byte b1, byte b2) {
+        return (b0 & 0xff) << 16 | (b1 & 0xff) << 8 | (b2 & 0xff);
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    /** the table and postings of the sidecar from the merged pairs, one table entry per distinct trigram */
+    private static final class TableWriter implements PairSink {
+        private final DataOutputStream table;
+        private final DataOutputStream postings;
+        private int trigram = -1;
+        private long start;
+        private int count;
+        private int trigrams;
+
+        TableWriter(DataOutputStream table, DataOutputStream postings) {
+            this.table = table;
+            this.postings = postings;
+        }
+
+        @Override
+        public void accept(long pair) throws IOException {
+            int next = (int) (pair >>> 32);
+            if (next != trigram) {
+                entry();
+                trigram = next;
+            }
+            postings.writeInt((int) pair);
+            count++;
+        }
+
+        private void entry() throws IOException {
+            if (count > 0) {
+                table.writeInt(trigram);
+                table.writeLong(start);
+                table.writeInt(count);
+                start += count;
+                count = 0;
+                trigrams++;
+            }
+        }
+
+        /** @return the number of table entries */
+        int finish() throws IOException {
+            entry();
+            return trigrams;
+        }
+    }
+
+    private static final class RunReader {
+        private final DataInputStream in;
+        private long remaining;
+        private long head;
+
+        RunReader(Path run) throws IOException {
+            this.remaining = Files.size(run) / 8;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 64 * 1024));
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            head = in.readLong();
+            return true;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
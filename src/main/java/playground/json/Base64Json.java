@@ -0,0 +1,142 @@
+package playground.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Base64 message payloads without intermediate Strings or byte arrays.
+ *
+ * JsonSerializationUtil.serializeToBase64(T) copies the payload three times:
+ * JSON String -> UTF-8 byte[] -> Base64 String, and deserializeFromBase64 does the reverse.
+ * Here Jackson's generator writes through a Base64 encoding OutputStream straight into the caller's
+ * ByteBuffer or stream, and the parser reads through a Base64 decoding InputStream over the caller's bytes:
+ * 1/ encode: generator buffer -> Base64.Encoder.wrap() -> target, chunk by chunk
+ * 2/ decode: source -> Base64.Decoder.wrap() -> parser buffer, chunk by chunk
+ *
+ * Output is standard Base64 with padding, readable by deserializeFromBase64(String, ...) and vice versa.
+ * Readers and writers come from a JsonCodecRegistry, the types are resolved once. Thread-safe.
+ */
+public class Base64Json {
+    private final JsonCodecRegistry codecs;
+
+    public Base64Json() {
+        this(new JsonCodecRegistry());
+    }
+
+    public Base64Json(ObjectMapper mapper) {
+        this(new JsonCodecRegistry(mapper));
+    }
+
+    public Base64Json(JsonCodecRegistry codecs) {
+        this.codecs = codecs;
+    }
+
+    /** Upper bound of the Base64 size of a payload of jsonBytes bytes, to size target buffers. */
+    public static int encodedLength(int jsonBytes) {
+        return 4 * ((jsonBytes + 2) / 3);
+    }
+
+    /** Write the Base64 of the JSON of value; the target stream is flushed, not closed. */
+    public void serializeToBase64(Object value, OutputStream target) throws IOException {
+        // closing the encoder writes the final quantum and padding, the shield keeps the target open
+        try (OutputStream base64 = Base64.getEncoder().wrap(new CloseShield(target))) {
+            codecs.writer(value == null ? Object.class : value.getClass()).writeValue(base64, value);
+        }
+    }
+
+    /**
+     * Write the Base64 of the JSON of value at the position of the target, advancing it.
+     * @return number of bytes written
+     * @throws BufferOverflowException if the target has not enough room, its position is then undefined
+     */
+    public int serializeToBase64(Object value, ByteBuffer target) throws IOException {
+        int start = target.position();
+        serializeToBase64(value, new ByteBufferOutputStream(target));
+        return target.position() - start;
+    }
+
+    /** Read a value from the Base64 bytes between the position and the limit of the source, consuming them. */
+    public <T> T deserializeFromBase64(ByteBuffer source, Class<T> type) throws IOException {
+        return deserializeFromBase64(new ByteBufferInputStream(source), codecs.reader(type));
+    }
+
+    public <T> T deserializeFromBase64(ByteBuffer source, TypeReference<T> type) throws IOException {
+        return deserializeFromBase64(new ByteBufferInputStream(source), codecs.reader(type));
+    }
+
+    /** Read a value from a stream of Base64 bytes; the source is not closed. */
+    public <T> T deserializeFromBase64(InputStream source, Class<T> type) throws IOException {
+        return deserializeFromBase64(source, codecs.reader(type));
+    }
+
+    public <T> T deserializeFromBase64(InputStream source, TypeReference<T> type) throws IOException {
+        return deserializeFromBase64(source, codecs.reader(type));
+    }
+
+    private static <T> T deserializeFromBase64(InputStream source, ObjectReader reader) throws IOException {
+        // the parser closes the decoder, which would close the source
+        return reader.readValue(Base64.getDecoder().wrap(new FilterInputStream(source) {
+            @Override
+            public void close() { }
+        }));
+    }
+
+    /** Forwards writes, ignores close() but still flushes. */
+    private static final class CloseShield extends FilterOutputStream {
+        CloseShield(OutputStream out) { super(out); }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+
+        @Override
+        public void close() throws IOException { flush(); }
+    }
+
+    private static final class ByteBufferOutputStream extends OutputStream {
+        private final ByteBuffer target;
+
+        ByteBufferOutputStream(ByteBuffer target) { this.target = target; }
+
+        @Override
+        public void write(int b) { target.put((byte) b); }
+
+        @Override
+        public void write(byte[] b, int off, int len) { target.put(b, off, len); }
+    }
+
+    /** Closing it is a no-op: the buffer belongs to the caller. */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer source;
+
+        ByteBufferInputStream(ByteBuffer source) { this.source = source; }
+
+        @Override
+        public int read() { return source.hasRemaining() ? source.get() & 0xff : -1; }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, source.remaining());
+            source.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() { return source.remaining(); }
+    }
+}
@@ -0,0 +1,136 @@
+package playground.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel JsonSerializationUtil.deserializeList(Collection<String>, Class<T>) for large batches,
+ * e.g. 100k messages taken off a queue.
+ *
+ * 1/ the input is split in halves on a ForkJoinPool down to chunks of a few hundred messages
+ * 2/ a chunk is parsed sequentially by one worker with the shared ObjectReader of the type (JsonCodecRegistry);
+ *    the parser buffers are recycled per thread by Jackson, so a worker allocates them once, not per message
+ * 3/ every result goes to its input index: the output order is the input order, whatever the scheduling
+ * 4/ a message that does not parse is recorded as a Failure (index, exception) and leaves null at its index;
+ *    the rest of the batch is still decoded
+ */
+public class BulkDeserializer {
+    private static final int MIN_CHUNK = 256;
+
+    private final JsonCodecRegistry codecs;
+    private final ForkJoinPool pool;
+
+    public BulkDeserializer() {
+        this(new JsonCodecRegistry(), ForkJoinPool.commonPool());
+    }
+
+    public BulkDeserializer(JsonCodecRegistry codecs, ForkJoinPool pool) {
+        this.codecs = codecs;
+        this.pool = pool;
+    }
+
+    public static final class Failure {
+        public final int index;
+        public final Exception cause;
+
+        Failure(int index, Exception cause) {
+            this.index = index;
+            this.cause = cause;
+        }
+
+        @Override
+        public String toString() { return index + ": " + cause.getMessage(); }
+    }
+
+    public static final class Result<T> {
+        private final List<T> values;
+        private final List<Failure> failures;
+
+        Result(List<T> values, List<Failure> failures) {
+            this.values = values;
+            this.failures = failures;
+        }
+
+        /** one value per input message, in input order; null where the message failed */
+        public List<T> values() { return values; }
+
+        /** in input order */
+        public List<Failure> failures() { return failures; }
+
+        public boolean isSuccess() { return failures.isEmpty(); }
+    }
+
+    public <T> Result<T> deserializeList(Collection<String> jsons, Class<T> type) {
+        return deserializeList(jsons, codecs.reader(type));
+    }
+
+    public <T> Result<T> deserializeList(Collection<String> jsons, TypeReference<T> type) {
+        return deserializeList(jsons, codecs.reader(type));
+    }
+
+    private <T> Result<T> deserializeList(Collection<String> jsons, ObjectReader reader) {
+        String[] input = jsons.toArray(new String[0]);
+        Object[] output = new Object[input.length];
+        int chunk = Math.max(MIN_CHUNK, input.length / (pool.getParallelism() * 4));
+        List<Failure> failures = pool.invoke(new Chunk(reader, input, output, 0, input.length, chunk));
+        @SuppressWarnings("unchecked")
+        List<T> values = (List<T>) Collections.unmodifiableList(Arrays.asList(output));
+        return new Result<>(values, Collections.unmodifiableList(failures));
+    }
+
+    private static final class Chunk extends RecursiveTask<List<Failure>> {
+        private final ObjectReader reader;
+        private final String[] input;
+        private final Object[] output;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Chunk(ObjectReader reader, String[] input, Object[] output, int from, int to, int chunk) {
+            this.reader = reader;
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected List<Failure> compute() {
+            if (to - from <= chunk) {
+                return parse();
+            }
+            int mid = (from + to) >>> 1;
+            Chunk right = new Chunk(reader, input, output, mid, to, chunk);
+            right.fork();
+            List<Failure> failures = new Chunk(reader, input, output, from, mid, chunk).compute();
+            List<Failure> rightFailures = right.join();
+            if (failures.isEmpty()) {
+                return rightFailures;
+            }
+            failures.addAll(rightFailures);
+            return failures;
+        }
+
+        private List<Failure> parse() {
+            List<Failure> failures = new ArrayList<>(0);
+            for (int i = from; i < to; i++) {
+                try {
+                    output[i] = reader.readValue(input[i]);
+                } catch (IOException | RuntimeException e) {
+                    failures.add(new Failure(i, e));
+                }
+            }
+            return failures;
+        }
+    }
+}
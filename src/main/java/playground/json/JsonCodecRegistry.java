@@ -0,0 +1,108 @@
+package playground.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import playground.Counters;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Per-type ObjectReader/ObjectWriter, resolved once and reused.
+ *
+ * JsonSerializationUtil.deserialize(json, new TypeReference<Map<String, Set<String>>>(){}) resolves
+ * the JavaType and looks up the root deserializer on every call. Here:
+ * 1/ the key is the java.lang.reflect.Type: a Class, or the ParameterizedType of a TypeReference;
+ *    two anonymous TypeReference<Map<String, Set<String>>> instances have equal types, so they share an entry
+ * 2/ the first lookup builds readerFor(type)/writerFor(type), which fetch the root (de)serializer eagerly
+ * 3/ later lookups are one ConcurrentHashMap.get()
+ *
+ * ObjectReader and ObjectWriter are immutable and thread-safe, so one instance per type serves all threads.
+ * warmUp() at startup moves the misses out of the first requests; hits()/misses() tell if anything was missed.
+ * Types are never evicted: register only a bounded set of types, not one per request.
+ */
+public class JsonCodecRegistry {
+    private final ObjectMapper mapper;
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final Counters.Counter hits = Counters.striped();
+    private final Counters.Counter misses = Counters.striped();
+
+    public JsonCodecRegistry() {
+        this(new ObjectMapper());
+    }
+
+    /** @param mapper not to be reconfigured afterwards, the cached readers and writers would not see it */
+    public JsonCodecRegistry(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public ObjectReader reader(Class<?> type) {
+        return lookup(readers, type, t -> mapper.readerFor(type));
+    }
+
+    public ObjectReader reader(TypeReference<?> type) {
+        return lookup(readers, type.getType(), t -> mapper.readerFor(type));
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        return lookup(writers, type, t -> mapper.writerFor(type));
+    }
+
+    public ObjectWriter writer(TypeReference<?> type) {
+        return lookup(writers, type.getType(), t -> mapper.writerFor(type));
+    }
+
+    /** Resolve readers and writers of the types up front; counted as misses. */
+    public void warmUp(Class<?>... types) {
+        for (Class<?> type : types) {
+            reader(type);
+            writer(type);
+        }
+    }
+
+    public void warmUp(TypeReference<?>... types) {
+        for (TypeReference<?> type : types) {
+            reader(type);
+            writer(type);
+        }
+    }
+
+    public <T> T deserialize(String json, Class<T> type) throws IOException {
+        return reader(type).readValue(json);
+    }
+
+    public <T> T deserialize(String json, TypeReference<T> type) throws IOException {
+        return reader(type).readValue(json);
+    }
+
+    /** Serialized with the writer of the runtime class of the value. */
+    public String serialize(Object value) throws IOException {
+        return value == null ? "null" : writer(value.getClass()).writeValueAsString(value);
+    }
+
+    public long hits() { return hits.get(); }
+
+    public long misses() { return misses.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("readers=%d writers=%d hits=%d misses=%d",
+                             readers.size(), writers.size(), hits(), misses());
+    }
+
+    private <V> V lookup(ConcurrentMap<Type, V> cache, Type type, Function<Type, V> factory) {
+        V cached = cache.get(type);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return cache.computeIfAbsent(type, factory);
+    }
+}
@@ -0,0 +1,124 @@
+package playground.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming counterpart of JsonSerializationUtil.serializeList/deserializeList for large collections.
+ *
+ * serializeList(Collection<T>) builds one String per element and a List holding all of them,
+ * deserializeList(Collection<String>, Class<T>) needs all of those Strings up front. Instead:
+ * 1/ write: one JsonGenerator over the caller's stream, each element is serialized straight into its buffer
+ * 2/ read: one JsonParser over the caller's stream, elements are bound one at a time by a MappingIterator
+ * Memory stays at one element plus the parser/generator buffers, whatever the number of elements.
+ *
+ * Two layouts:
+ * - ARRAY:  [{...},{...}]       a single JSON document
+ * - NDJSON: {...}\n{...}\n      one element per line, can be appended to and split by line
+ *
+ * The caller owns the streams: they are flushed, never closed.
+ */
+public class JsonStreams {
+    public enum Format { ARRAY, NDJSON }
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    public JsonStreams() {
+        this(new ObjectMapper());
+    }
+
+    public JsonStreams(ObjectMapper mapper) {
+        this.mapper = mapper;
+        // no pretty printing: NDJSON needs one element per line; no flush of the stream after every element
+        this.writer = mapper.writer()
+                            .without(SerializationFeature.INDENT_OUTPUT)
+                            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /** @return number of elements written */
+    public long write(Iterable<?> values, OutputStream out, Format format) throws IOException {
+        return write(values.iterator(), out, format);
+    }
+
+    /** @param values consumed lazily, e.g. rows of a database cursor */
+    public long write(Iterator<?> values, OutputStream out, Format format) throws IOException {
+        return write(values, mapper.getFactory().createGenerator(out, JsonEncoding.UTF8), format);
+    }
+
+    public long write(Iterable<?> values, Writer out, Format format) throws IOException {
+        return write(values.iterator(), mapper.getFactory().createGenerator(out), format);
+    }
+
+    private long write(Iterator<?> values, JsonGenerator generator, Format format) throws IOException {
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        long count = 0;
+        try {
+            if (format == Format.ARRAY) {
+                generator.writeStartArray();
+            }
+            while (values.hasNext()) {
+                writer.writeValue(generator, values.next());
+                if (format == Format.NDJSON) {
+                    generator.writeRaw('\n');
+                }
+                count++;
+            }
+            if (format == Format.ARRAY) {
+                generator.writeEndArray();
+            }
+        } finally {
+            generator.close();  // flushes, the target stays open
+        }
+        return count;
+    }
+
+    /**
+     * Bind the elements one at a time, both formats are accepted: a top-level array is unwrapped,
+     * otherwise the root values are read in sequence.
+     * The iterator owns the parser, close it to release it; the stream itself is left open.
+     */
+    public <T> MappingIterator<T> read(InputStream in, Class<T> type) throws IOException {
+        return reader(type).readValues(in);
+    }
+
+    public <T> MappingIterator<T> read(Reader in, Class<T> type) throws IOException {
+        return reader(type).readValues(in);
+    }
+
+    /** read() as a sequential Stream<T>; close the stream (try-with-resources) to release the parser. */
+    public <T> Stream<T> stream(InputStream in, Class<T> type) throws IOException {
+        MappingIterator<T> values = read(in, type);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(values, Spliterator.ORDERED), false)
+                            .onClose(() -> {
+                                try {
+                                    values.close();
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+    }
+
+    private ObjectReader reader(Class<?> type) {
+        return mapper.readerFor(type).without(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+}
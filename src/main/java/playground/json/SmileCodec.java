@@ -0,0 +1,65 @@
+package playground.json;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Binary counterpart of JsonSerializationUtil for DTOs like playground.Car: same serialize/deserialize shape,
+ * byte[] instead of String, Jackson's Smile format on the wire (same data model as JSON, same annotations).
+ *
+ * 1. no text formatting: numbers are binary varints, a Date is written as its epoch millis,
+ *    not formatted to "2017-03-12 10:31 AM" and parsed back
+ * 2. property names and short string values seen before in a document become a 1-2 byte back reference:
+ *    in a list of cars "color", "model", ... and repeated values like "black" are written once
+ * 3. readers and writers come from a JsonCodecRegistry over the Smile mapper
+ *
+ * Back references only work inside one document, so serializeList() writes the whole collection as one
+ * Smile array instead of one payload per element as JsonSerializationUtil.serializeList() does.
+ * Payloads are binary: Base64 them (see Base64Json) where text is needed.
+ */
+public class SmileCodec {
+    private final ObjectMapper mapper;
+    private final JsonCodecRegistry codecs;
+    private final ConcurrentMap<Class<?>, ObjectReader> listReaders = new ConcurrentHashMap<>();
+
+    public SmileCodec() {
+        SmileFactory factory = new SmileFactory();
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        mapper = new ObjectMapper(factory).enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        codecs = new JsonCodecRegistry(mapper);
+    }
+
+    public byte[] serialize(Object value) throws IOException {
+        return codecs.writer(value == null ? Object.class : value.getClass()).writeValueAsBytes(value);
+    }
+
+    public <T> T deserialize(byte[] smile, Class<T> type) throws IOException {
+        return codecs.reader(type).readValue(smile);
+    }
+
+    public <T> T deserialize(byte[] smile, TypeReference<T> type) throws IOException {
+        return codecs.reader(type).readValue(smile);
+    }
+
+    /** The whole collection as one Smile array, so repeated names and values are shared across elements. */
+    public byte[] serializeList(Collection<?> values) throws IOException {
+        return mapper.writeValueAsBytes(values);
+    }
+
+    public <T> List<T> deserializeList(byte[] smile, Class<T> type) throws IOException {
+        ObjectReader reader = listReaders.computeIfAbsent(
+                type, t -> mapper.readerFor(mapper.getTypeFactory().constructCollectionType(List.class, t)));
+        return reader.readValue(smile);
+    }
+}
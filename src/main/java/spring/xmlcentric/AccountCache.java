@@ -0,0 +1,388 @@
+package spring.xmlcentric;
+
+import playground.Counters;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache of balances in front of an AccountStore (the accountCache bean, in front of accountRepo).
+ *
+ * 1. bounded: SEGMENTS LRU maps (LinkedHashMap in access order), a key lives in the segment of its hash,
+ *    each segment holds maxSize / SEGMENTS balances and drops its least recently used one beyond that;
+ *    a lookup locks one segment for a map operation, never for a load
+ * 2. TTL: a balance older than ttlMillis is loaded again, bounding staleness from writes that bypass the cache
+ * 3. single flight: the first miss of a key registers a future and loads, concurrent misses of the same key
+ *    wait for that future; a stampede on a cold key is one query, not one per thread
+ * 4. invalidation: saveBalances*() drop both accounts after the write, and any load of them still running,
+ *    so that load cannot put back the value from before the write (its callers still get it, as a read
+ *    that started before the write). TransferService reads and writes an account under the same stripe lock,
+ *    it always sees the balance of the last transfer
+ * 5. metrics(): hit rate, loads and load latency, waits on another thread's load, evictions, invalidations
+ *
+ * A failed write-behind commit invalidates everything: cached balances may have been read from its window.
+ */
+class AccountCache implements AccountStore {
+    static final int SEGMENTS = 16;
+
+    private final AccountStore store;
+    private final long ttlNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final Counters.Counter hits = Counters.striped();
+    private final Counters.Counter misses = Counters.striped();
+    private final Counters.Counter waits = Counters.striped();
+    private final Counters.Counter loads = Counters.striped();
+    private final Counters.Counter loadFailures = Counters.striped();
+    private final Counters.Counter loadNanos = Counters.striped();
+    private final LongAccumulator maxLoadNanos = new LongAccumulator(Math::max, 0);
+    private final Counters.Counter evictions = Counters.striped();
+    private final Counters.Counter invalidations = Counters.striped();
+
+    public AccountCache(AccountStore store, int maxSize, long ttlMillis) {
+        if (maxSize < SEGMENTS || ttlMillis < 1) {
+            throw new IllegalArgumentException("maxSize " + maxSize + " (at least " + SEGMENTS + "), ttlMillis "
+                                               + ttlMillis);
+        }
+        this.store = store;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxSize / SEGMENTS);
+        }
+    }
+
+    @Override
+    public long balance(long id) throws SQLException {
+        Segment segment = segment(id);
+        CompletableFuture<Long> load;
+        boolean loader = false;
+        segment.lock.lock();
+        try {
+            Cached cached = segment.balances.get(id);
+            if (cached != null) {
+                if (System.nanoTime() - cached.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return cached.balance;
+                }
+                segment.balances.remove(id);
+            }
+            misses.increment();
+            load = segment.loading.get(id);
+            if (load == null) {
+                load = new CompletableFuture<>();
+                segment.loading.put(id, load);
+                loader = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        return loader ? load(segment, id, load) : await(load);
+    }
+
+    private long load(Segment segment, long id, CompletableFuture<Long> load) throws SQLException {
+        long start = System.nanoTime();
+        long balance;
+        try {
+            balance = store.balance(id);
+        } catch (SQLException | RuntimeException e) {
+            loadFailures.increment();
+            segment.lock.lock();
+            try {
+                segment.loading.remove(id, load);
+            } finally {
+                segment.lock.unlock();
+            }
+            load.completeExceptionally(e);
+            throw e;
+        }
+        long now = System.nanoTime();
+        loads.increment();
+        loadNanos.add(now - start);
+        maxLoadNanos.accumulate(now - start);
+        segment.lock.lock();
+        try {
+            if (segment.loading.remove(id, load)) {  // else invalidated while loading: return it, do not keep it
+                segment.balances.put(id, new Cached(balance, now));
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        load.complete(balance);
+        return balance;
+    }
+
+    private long await(CompletableFuture<Long> load) throws SQLException {
+        waits.increment();
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+        }
+    }
+
+    @Override
+    public void saveBalances(long id, long balance, long otherId, long otherBalance) throws SQLException {
+        try {
+            store.saveBalances(id, balance, otherId, otherBalance);
+        } finally {
+            invalidate(id);
+            invalidate(otherId);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveBalancesAsync(long id, long balance, long otherId, long otherBalance) {
+        // the store reads its pending writes back at once, so invalidating now (not at commit) is enough
+        CompletableFuture<Void> committed = store.saveBalancesAsync(id, balance, otherId, otherBalance);
+        invalidate(id);
+        invalidate(otherId);
+        return committed.whenComplete((done, failure) -> {
+            if (failure != null) {
+                invalidateAll();
+            }
+        });
+    }
+
+    public void invalidate(long id) {
+        Segment segment = segment(id);
+        segment.lock.lock();
+        try {
+            segment.balances.remove(id);
+            segment.loading.remove(id);
+        } finally {
+            segment.lock.unlock();
+        }
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.balances.clear();
+                segment.loading.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        invalidations.increment();
+    }
+
+    private Segment segment(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return segments[(int) (h >>> 60)];  // top 4 bits: SEGMENTS = 16
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.balances.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public Metrics metrics() {
+        return new Metrics(size(), hits.get(), misses.get(), waits.get(), loads.get(), loadFailures.get(),
+                           loadNanos.get(), maxLoadNanos.get(), evictions.get(), invalidations.get());
+    }
+
+    public static final class Metrics {
+        public final int size;
+        public final long hits;
+        public final long misses;
+        public final double hitRate;
+        public final long waits;
+        public final long loads;
+        public final long loadFailures;
+        public final double averageLoadMicros;
+        public final double maxLoadMicros;
+        public final long evictions;
+        public final long invalidations;
+
+        Metrics(int size, long hits, long misses, long waits, long loads, long loadFailures, long loadNanos,
+                long maxLoadNanos, long evictions, long invalidations) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+            this.waits = waits;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.averageLoadMicros = loads == 0 ? 0 : loadNanos / 1e3 / loads;
+            this.maxLoadMicros = maxLoadNanos / 1e3;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d cached; hit rate %.1f%% (%d hits, %d misses, %d waited on a load); "
+                                 + "%d loads avg %.1f us max %.1f us, %d failed; %d evicted, %d invalidated",
+                                 size, hitRate * 100, hits, misses, waits, loads, averageLoadMicros, maxLoadMicros,
+                                 loadFailures, evictions, invalidations);
+        }
+    }
+
+    private static final class Cached {
+        final long balance;
+        final long loadedAt;
+
+        Cached(long balance, long loadedAt) {
+            this.balance = balance;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /** all fields guarded by lock */
+    private final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<Long, Cached> balances;
+        final Map<Long, CompletableFuture<Long>> loading = new HashMap<>();
+
+        Segment(int capacity) {
+            balances = new LinkedHashMap<Long, Cached>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * 8 threads looking up balances of 10000 accounts, 80% of the lookups on 2000 of them,
+     * one transfer per 20 lookups, with and without a 4000-entry cache;
+     * then 16 threads asking for the same cold account at once.
+     *
+     * example output (1 core):
+     * no cache: 13878 lookups/s, 1393 transfers, total 1000000000 ok
+     * cache: 100512 lookups/s, 10082 transfers, total 1000000000 ok
+     * 3980 cached; hit rate 80.8% (179173 hits, 42631 misses, 60 waited on a load); 42571 loads avg 183.2 us max 45761.5 us, 0 failed; 18427 evicted, 20164 invalidated
+     * stampede: 1 cached; hit rate 0.0% (0 hits, 16 misses, 15 waited on a load); 1 loads avg 50485.2 us max 50485.2 us, 0 failed; 0 evicted, 0 invalidated
+     */
+    public static void main(String[] args) throws Exception {
+        int accounts = 10_000;
+        try (DataSource dataSource = new DataSource("jdbc:hsqldb:mem:cache;hsqldb.tx=mvcc", "sa", "",
+                                                    16, 10_000, 60_000)) {
+            AccountRepository repository = new AccountRepository(dataSource);
+            repository.createTable();
+            for (long id = 0; id < accounts; id++) {
+                repository.open(id, 100_000);
+            }
+            long total = repository.totalBalance();
+            run("no cache", repository, repository, accounts, total);
+            AccountCache cache = new AccountCache(repository, 4_000, 60_000);
+            run("cache", cache, repository, accounts, total);
+            System.out.println(cache.metrics());
+
+            AccountCache cold = new AccountCache(new SlowStore(repository), 4_000, 60_000);
+            int threads = 16;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch ready = new CountDownLatch(threads);
+            CountDownLatch go = new CountDownLatch(1);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                        cold.balance(42);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            ready.await();
+            go.countDown();
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            System.out.println("stampede: " + cold.metrics());
+        }
+    }
+
+    private static void run(String label, AccountStore store, AccountRepository repository, int accounts,
+                            long expectedTotal) throws Exception {
+        int threads = 8;
+        long duration = TimeUnit.SECONDS.toNanos(2);
+        TransferService transfers = new TransferService(store);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Counters.Counter lookups = Counters.striped();
+        CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (System.nanoTime() - start < duration) {
+                        for (int i = 0; i < 20; i++) {
+                            store.balance(random.nextInt(10) < 8 ? random.nextInt(accounts / 5)
+                                                                 : random.nextInt(accounts));
+                        }
+                        lookups.add(20);
+                        long from = random.nextInt(accounts);
+                        transfers.transfer(from, (from + 1 + random.nextInt(accounts - 1)) % accounts, 100);
+                    }
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = repository.totalBalance();
+        if (total != expectedTotal) {
+            throw new IllegalStateException(label + ": total balance " + total + ", expected " + expectedTotal);
+        }
+        System.out.println(String.format("%s: %.0f lookups/s, %d transfers, total %d ok", label,
+                                         lookups.get() / seconds, transfers.transfers(), total));
+    }
+
+    /** a store 50 ms away, so that every thread of the stampede arrives while the first load runs */
+    private static final class SlowStore implements AccountStore {
+        private final AccountStore store;
+
+        SlowStore(AccountStore store) { this.store = store; }
+
+        @Override
+        public long balance(long id) throws SQLException {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return store.balance(id);
+        }
+
+        @Override
+        public void saveBalances(long id, long balance, long otherId, long otherBalance) throws SQLException {
+            store.saveBalances(id, balance, otherId, otherBalance);
+        }
+
+        @Override
+        public CompletableFuture<Void> saveBalancesAsync(long id, long balance, long otherId, long otherBalance) {
+            return store.saveBalancesAsync(id, balance, otherId, otherBalance);
+        }
+    }
+}
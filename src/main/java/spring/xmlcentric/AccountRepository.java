@@ -0,0 +1,322 @@
+package spring.xmlcentric;
+
+import playground.Counters;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Account balances in table ACCOUNT of the DataSource, in cents; one pooled connection per call.
+ *
+ * No locking here: TransferService serializes the updates of an account, the repository only makes
+ * the two balances of a transfer durable together, in one transaction.
+ *
+ * Write-behind mode (flushMillis > 0): saveBalancesAsync() only records the new balances and returns a future,
+ * a flusher thread writes them a window at a time.
+ * 1. coalescing: an account updated several times in a window is written once, with its last balance
+ * 2. group commit: a window is one JDBC batch of UPDATEs in one transaction, one commit for all its transfers;
+ *    the window closes flushMillis after its first update or at maxBatch accounts, whichever comes first,
+ *    so the added latency is bounded by flushMillis plus one commit
+ * 3. backpressure: saves wait while the window holds maxBatch accounts, until the flusher takes it;
+ *    the flusher takes the next window only after committing the previous one,
+ *    so at most 2 windows are unwritten and they do not grow faster than the table takes them
+ * 4. the futures of a window complete when its commit returns, all of them exceptionally if it fails
+ * 5. read your writes: balance() looks at the pending and the in-flight window before the table
+ * 6. fail-stop: after a failed commit the windows behind it were computed from balances that never made it
+ *    to the table, they are failed too and so is every later save; the table keeps the last committed state.
+ *    An interrupted flusher stops the same way, failing the windows it will never commit
+ */
+class AccountRepository implements AccountStore, AutoCloseable {
+    private final DataSource dataSource;
+    private final long flushNanos;
+    private final int maxBatch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition full = lock.newCondition();
+    private final Condition room = lock.newCondition();
+    /** written under lock, read without it */
+    private volatile Window pending = new Window();
+    /** the window being committed by the flusher, null between commits */
+    private volatile Window inFlight;
+    private volatile Throwable failed;
+    private volatile boolean closed;
+    private final Thread flusher;
+
+    private final Counters.Counter saves = Counters.striped();
+    private final Counters.Counter flushes = Counters.striped();
+    private final Counters.Counter rows = Counters.striped();
+
+    public AccountRepository(DataSource dataSource) { this(dataSource, 0, 1); }
+
+    /** @param flushMillis 0: write-through, every save is its own transaction */
+    AccountRepository(DataSource dataSource, long flushMillis, int maxBatch) {
+        if (flushMillis < 0 || maxBatch < 1) {
+            throw new IllegalArgumentException("flushMillis " + flushMillis + ", maxBatch " + maxBatch);
+        }
+        this.dataSource = dataSource;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+        this.maxBatch = maxBatch;
+        if (flushMillis > 0) {
+            flusher = new Thread(this::flushLoop, "account-write-behind");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    void createTable() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS ACCOUNT (ID BIGINT PRIMARY KEY, BALANCE BIGINT NOT NULL)");
+        }
+    }
+
+    void open(long id, long balance) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO ACCOUNT (ID, BALANCE) VALUES (?, ?)")) {
+            insert.setLong(1, id);
+            insert.setLong(2, balance);
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public long balance(long id) throws SQLException {
+        if (flusher != null && failed == null) {
+            // pending before inFlight: the flusher publishes inFlight before it replaces pending
+            Long unwritten = pending.balances.get(id);
+            Window committing = inFlight;
+            if (unwritten == null && committing != null) {
+                unwritten = committing.balances.get(id);
+            }
+            if (unwritten != null) {
+                return unwritten;
+            }
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT BALANCE FROM ACCOUNT WHERE ID = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No account " + id);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /** both or neither; in write-behind mode waits for the group commit */
+    @Override
+    public void saveBalances(long id, long balance, long otherId, long otherBalance) throws SQLException {
+        if (flusher != null) {
+            try {
+                saveBalancesAsync(id, balance, otherId, otherBalance).join();
+                return;
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                                                           : new SQLException(e.getCause());
+            }
+        }
+        saves.increment();
+        Map<Long, Long> balances = new HashMap<>(4);
+        balances.put(id, balance);
+        balances.put(otherId, otherBalance);
+        write(balances);
+    }
+
+    /**
+     * Both balances go into the current window; write-through mode writes them before returning.
+     * @return completes once the balances are committed
+     */
+    @Override
+    public CompletableFuture<Void> saveBalancesAsync(long id, long balance, long otherId, long otherBalance) {
+        if (flusher == null) {
+            try {
+                saveBalances(id, balance, otherId, otherBalance);
+                return CompletableFuture.completedFuture(null);
+            } catch (SQLException e) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            while (pending.balances.size() >= maxBatch && failed == null && !closed) {
+                room.awaitUninterruptibly();  // backpressure: wait for the flusher to take the full window
+            }
+            if (failed != null || closed) {
+                future.completeExceptionally(failed != null ? new SQLException("write-behind stopped", failed)
+                                                            : new SQLException("Repository is closed"));
+                return future;
+            }
+            Window window = pending;
+            if (window.futures.isEmpty()) {
+                window.openedAt = System.nanoTime();
+                notEmpty.signal();
+            }
+            window.balances.put(id, balance);
+            window.balances.put(otherId, otherBalance);
+            window.futures.add(future);
+            if (window.balances.size() >= maxBatch) {
+                full.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        saves.increment();
+        return future;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            Window window;
+            lock.lock();
+            try {
+                while (pending.futures.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.futures.isEmpty()) {
+                    return;  // closed and drained
+                }
+                long remaining;
+                while (pending.balances.size() < maxBatch && !closed
+                        && (remaining = pending.openedAt + flushNanos - System.nanoTime()) > 0) {
+                    full.awaitNanos(remaining);
+                }
+                window = pending;
+                inFlight = window;
+                pending = new Window();
+                room.signalAll();
+            } catch (InterruptedException e) {
+                stop(e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+            commit(window);
+        }
+    }
+
+    private void commit(Window window) {
+        Throwable cause = failed;
+        if (cause == null) {
+            try {
+                write(window.balances);
+                flushes.increment();
+                rows.add(window.balances.size());
+            } catch (SQLException | RuntimeException e) {
+                failed = cause = e;
+            }
+        }
+        inFlight = null;
+        for (CompletableFuture<Void> future : window.futures) {
+            if (cause == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new SQLException("write-behind stopped", cause));
+            }
+        }
+    }
+
+    /** under lock: no window will be committed any more, fail them and every later save */
+    private void stop(Throwable cause) {
+        failed = cause;
+        if (inFlight != null) {
+            fail(inFlight, cause);
+            inFlight = null;
+        }
+        fail(pending, cause);
+        pending = new Window();
+        room.signalAll();
+    }
+
+    private static void fail(Window window, Throwable cause) {
+        for (CompletableFuture<Void> future : window.futures) {
+            future.completeExceptionally(new SQLException("write-behind stopped", cause));
+        }
+    }
+
+    private void write(Map<Long, Long> balances) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement update = connection.prepareStatement("UPDATE ACCOUNT SET BALANCE = ? WHERE ID = ?")) {
+            connection.setAutoCommit(false);
+            for (Map.Entry<Long, Long> entry : balances.entrySet()) {
+                update.setLong(1, entry.getValue());
+                update.setLong(2, entry.getKey());
+                update.addBatch();
+            }
+            update.executeBatch();
+            connection.commit();  // close() rolls back if we never get here
+        }
+    }
+
+    long totalBalance() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(SUM(BALANCE), 0) FROM ACCOUNT")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    boolean isWriteBehind() { return flusher != null; }
+
+    /** "saves, commits, rows per commit"; write-through: every save is a commit of 2 rows */
+    String writeMetrics() {
+        long commits = flusher == null ? saves.get() : flushes.get();
+        long written = flusher == null ? saves.get() * 2 : rows.get();
+        return String.format("%d saves, %d commits, %.1f rows/commit",
+                             saves.get(), commits, commits == 0 ? 0.0 : (double) written / commits);
+    }
+
+    /**
+     * Commits what is pending, then stops the flusher.
+     * Interrupted while waiting for it: returns with the interrupt flag set, the flusher still commits what is pending.
+     */
+    @Override
+    public void close() {
+        if (flusher == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signal();
+            full.signal();
+            room.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Window {
+        /** the last balance of every account saved in the window */
+        final Map<Long, Long> balances = new ConcurrentHashMap<>();
+        /** guarded by lock until the window is taken by the flusher */
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        long openedAt;
+    }
+}
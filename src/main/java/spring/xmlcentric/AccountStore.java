@@ -0,0 +1,18 @@
+package spring.xmlcentric;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What TransferService needs from the accounts: AccountRepository, or an AccountCache in front of it.
+ * Balances in cents.
+ */
+interface AccountStore {
+    long balance(long id) throws SQLException;
+
+    /** both or neither */
+    void saveBalances(long id, long balance, long otherId, long otherBalance) throws SQLException;
+
+    /** @return completes once the balances are committed */
+    CompletableFuture<Void> saveBalancesAsync(long id, long balance, long otherId, long otherBalance);
+}
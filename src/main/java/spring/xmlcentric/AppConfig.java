@@ -12,17 +12,30 @@ public class AppConfig {
     @Inject
     private DataSource dataSource;
 
+    public AppConfig() {}
+
+    /** for GeneratedAppContext: the field injection done by hand, Spring keeps using the default constructor */
+    AppConfig(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
     @Bean(name = "accountRepo")  // Todo: no need to annotate @Inject on @Bean methods??
     public AccountRepository accountRepository() {
         // <bean id="accountRepository" class="..."><constructor-arg ref="jdbcDataSource"/></bean>
         return new AccountRepository(dataSource);
     }
 
+    @Bean(name = "accountCache")
+    public AccountCache accountCache(@Qualifier("accountRepo") AccountRepository accountRepository) {
+        // read-through in front of accountRepo: 100k balances, reloaded after a minute
+        return new AccountCache(accountRepository, 100_000, 60_000);
+    }
+
     @Bean
-    public TransferService transferService(@Qualifier("accountRepo") AccountRepository accountRepository) {
+    public TransferService transferService(@Qualifier("accountCache") AccountCache accountCache) {
         // <bean id="transferService" class="..."><constructor-arg ref="accountRepository"/></bean>
         // can use inter-bean injection as well;
-        return new TransferService(accountRepository);
+        return new TransferService(accountCache);
     }
 
 }
\ No newline at end of file
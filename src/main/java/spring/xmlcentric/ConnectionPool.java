@@ -0,0 +1,401 @@
+package spring.xmlcentric;
+
+import playground.Counters;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Bounded JDBC connection pool behind DataSource, with its own metrics.
+ *
+ * 1. borrow/return take no lock: a Semaphore with maxSize permits bounds the connections in use
+ *    (tryAcquire is a CAS, a thread parks only while the pool is exhausted, up to borrowTimeout,
+ *    and waiters are served first come first served),
+ *    idle connections sit in a ConcurrentLinkedDeque used as a stack
+ * 2. LIFO: the most recently returned connection is reused first, the cold ones sink to the tail
+ *    where the evictor closes them once idle for longer than idleTimeout
+ * 3. a connection idle for more than VALIDATE_AFTER_MILLIS is checked with isValid(), then with the
+ *    validationQuery if there is one, before it is handed out; a dead one is closed and the next one is tried,
+ *    so a dropped connection never reaches the caller. In-process drivers may answer isValid() from a flag
+ *    of their own: an HSQLDB mem: connection says true after the database was shut down, a query does not
+ * 4. the caller gets a proxy: close() rolls back a pending transaction, returns the physical connection
+ *    and makes the proxy unusable; closing it twice, also from two threads at once, returns it once
+ * 5. open connections never exceed maxSize: a connection goes back on the idle stack before its permit
+ *    is released, so a borrower holding a permit finds it there instead of opening one more
+ *
+ * Statements are not tracked, close them before the connection (try-with-resources).
+ */
+public final class ConnectionPool implements AutoCloseable {
+    static final long VALIDATE_AFTER_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final String validationQuery;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final Counters.Counter borrowed = Counters.striped();
+    private final Counters.Counter created = Counters.striped();
+    private final Counters.Counter evicted = Counters.striped();
+    private final Counters.Counter invalid = Counters.striped();
+    private final Counters.Counter timeouts = Counters.striped();
+    private final Counters.Counter waitNanos = Counters.striped();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final Counters.Counter heldNanos = Counters.striped();
+
+    public ConnectionPool(String url, String username, String password,
+                          int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis) {
+        this(url, username, password, maxSize, borrowTimeoutMillis, idleTimeoutMillis, null);
+    }
+
+    /** @param validationQuery e.g. "VALUES (1)", run on a connection idle for long; null or empty: isValid() only */
+    public ConnectionPool(String url, String username, String password,
+                          int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis, String validationQuery) {
+        if (maxSize < 1 || borrowTimeoutMillis < 0 || idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("maxSize " + maxSize + ", borrowTimeoutMillis " + borrowTimeoutMillis
+                                               + ", idleTimeoutMillis " + idleTimeoutMillis);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.validationQuery = validationQuery == null || validationQuery.isEmpty() ? null : validationQuery;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a connection to close when done, which gives it back to the pool
+     * @throws SQLTransientConnectionException all maxSize connections stayed in use for borrowTimeout
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Pool is closed");
+        }
+        long start = System.nanoTime();
+        // fast path only while nobody waits: the fair timed tryAcquire below queues behind the waiters,
+        // without it a thread returning and re-borrowing in a loop would keep taking the permit it just released
+        boolean acquired = !permits.hasQueuedThreads() && permits.tryAcquire();
+        try {
+            if (!acquired && !permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException(
+                        "No connection available in " + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos)
+                        + " ms, all " + maxSize + " in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            PooledConnection connection = takeIdle();
+            if (connection == null) {
+                connection = new PooledConnection(DriverManager.getConnection(url, username, password));
+                open.incrementAndGet();
+                created.increment();
+            }
+            long now = System.nanoTime();
+            long waited = now - start;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulate(waited);
+            borrowed.increment();
+            connection.borrowedAt = now;
+            return connection.handle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** the most recently used idle connection that is still valid, null if there is none */
+    private PooledConnection takeIdle() {
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (System.nanoTime() - connection.returnedAt < TimeUnit.MILLISECONDS.toNanos(VALIDATE_AFTER_MILLIS)
+                    || isValid(connection.physical)) {
+                return connection;
+            }
+            invalid.increment();
+            destroy(connection);
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection physical) {
+        try {
+            if (!physical.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return false;
+            }
+            if (validationQuery != null) {
+                try (Statement statement = physical.createStatement()) {
+                    statement.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+                    statement.execute(validationQuery);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection connection) {
+        long now = System.nanoTime();
+        heldNanos.add(now - connection.borrowedAt);
+        try {
+            if (closed || !reset(connection.physical)) {
+                invalid.increment();
+                destroy(connection);
+            } else {
+                connection.returnedAt = now;
+                idle.offerFirst(connection);
+                if (closed && idle.removeFirstOccurrence(connection)) {
+                    destroy(connection);  // lost a race with close()
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** back to the state a borrower expects: no open transaction, auto-commit on */
+    private static boolean reset(Connection physical) {
+        try {
+            if (physical.isClosed()) {
+                return false;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /** from the tail, the least recently used end; a connection polled by a borrower meanwhile is skipped */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext(); ) {
+            PooledConnection connection = it.next();
+            if (now - connection.returnedAt < idleTimeoutNanos) {
+                break;
+            }
+            if (idle.removeLastOccurrence(connection)) {
+                evicted.increment();
+                destroy(connection);
+            }
+        }
+    }
+
+    private void destroy(PooledConnection connection) {
+        open.decrementAndGet();
+        try {
+            connection.physical.close();
+        } catch (SQLException ignored) {
+            // it is gone either way
+        }
+    }
+
+    /** Closes the idle connections now, connections in use when they are returned. */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+
+    public Metrics metrics() {
+        return new Metrics(maxSize, maxSize - permits.availablePermits(), open.get(), permits.getQueueLength(),
+                           borrowed.get(), created.get(), evicted.get(), invalid.get(), timeouts.get(),
+                           waitNanos.get(), maxWaitNanos.get(), heldNanos.get());
+    }
+
+    public static final class Metrics {
+        public final int maxSize;
+        public final int active;
+        public final int open;
+        public final int waiting;
+        public final long borrowed;
+        public final long created;
+        public final long evicted;
+        public final long invalid;
+        public final long timeouts;
+        public final double averageWaitMicros;
+        public final double maxWaitMicros;
+        public final double averageHeldMicros;
+
+        Metrics(int maxSize, int active, int open, int waiting, long borrowed, long created, long evicted,
+                long invalid, long timeouts, long waitNanos, long maxWaitNanos, long heldNanos) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.open = open;
+            this.waiting = waiting;
+            this.borrowed = borrowed;
+            this.created = created;
+            this.evicted = evicted;
+            this.invalid = invalid;
+            this.timeouts = timeouts;
+            this.averageWaitMicros = borrowed == 0 ? 0 : waitNanos / 1e3 / borrowed;
+            this.maxWaitMicros = maxWaitNanos / 1e3;
+            // returns lag borrows by the connections still in use, close enough for an average
+            this.averageHeldMicros = borrowed == 0 ? 0 : heldNanos / 1e3 / borrowed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d active, %d open, %d waiting; %d borrowed, %d created, %d evicted, "
+                                 + "%d invalid, %d timeouts; wait avg %.1f us max %.1f us, held avg %.1f us",
+                                 active, maxSize, open, waiting, borrowed, created, evicted, invalid, timeouts,
+                                 averageWaitMicros, maxWaitMicros, averageHeldMicros);
+        }
+    }
+
+    private final class PooledConnection {
+        final Connection physical;
+        /** System.nanoTime() of the last borrow and return, written by the thread owning the connection */
+        volatile long borrowedAt;
+        volatile long returnedAt;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /** a fresh proxy per borrow: a stale reference kept after close() cannot touch the next borrower's work */
+        Connection handle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                       new Class<?>[] {Connection.class}, new Handle(this));
+        }
+
+        void release() {
+            ConnectionPool.this.release(this);
+        }
+    }
+
+    private static final class Handle implements InvocationHandler {
+        /** close() takes the connection with getAndSet: of two threads closing the same proxy, one releases */
+        private static final AtomicReferenceFieldUpdater<Handle, PooledConnection> CONNECTION =
+                AtomicReferenceFieldUpdater.newUpdater(Handle.class, PooledConnection.class, "connection");
+
+        private volatile PooledConnection connection;
+
+        Handle(PooledConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    PooledConnection current = CONNECTION.getAndSet(this, null);
+                    if (current != null) {
+                        current.release();
+                    }
+                    return null;
+                case "isClosed":
+                    return connection == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    PooledConnection target = connection;
+                    return "Pooled[" + (target == null ? "closed" : target.physical) + "]";
+                default:
+                    PooledConnection borrowed = connection;
+                    if (borrowed == null) {
+                        throw new SQLException("Connection is closed");
+                    }
+                    try {
+                        return method.invoke(borrowed.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /**
+     * 16 threads on a pool of 8 against in-process HSQLDB, then idle until the evictor has closed everything.
+     * On one core few connections are in use at once, LIFO lets the rest go idle and the evictor closes them.
+     * This only shows the metrics; ConnectionPoolTest (tst/) checks the bound, the borrow timeout, eviction,
+     * validation and the reset on return, and fails when one of them breaks.
+     *
+     * example output (1 core):
+     * 160000 queries in 5664 ms
+     * 0/8 active, 7 open, 0 waiting; 160000 borrowed, 11 created, 4 evicted, 0 invalid, 0 timeouts; wait avg 541.5 us max 627220.5 us, held avg 19.8 us
+     * after 1.5 s idle: 0/8 active, 0 open, 0 waiting; 160000 borrowed, 11 created, 11 evicted, 0 invalid, 0 timeouts; ...
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = 16;
+        int queries = 10_000;
+        try (ConnectionPool pool = new ConnectionPool("jdbc:hsqldb:mem:pooldemo", "sa", "", 8, 1_000, 1_000)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < queries; i++) {
+                            try (Connection connection = pool.getConnection();
+                                 Statement statement = connection.createStatement();
+                                 ResultSet rs = statement.executeQuery("VALUES (1)")) {
+                                rs.next();
+                            }
+                        }
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            System.out.println(String.format("%d queries in %d ms", pool.metrics().borrowed,
+                                             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            executor.shutdown();
+            System.out.println(pool.metrics());
+            Thread.sleep(1_500);
+            System.out.println("after 1.5 s idle: " + pool.metrics());
+        }
+    }
+}
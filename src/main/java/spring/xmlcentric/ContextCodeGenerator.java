@@ -0,0 +1,429 @@
+package spring.xmlcentric;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.ClassUtils;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Build-time step of the fast-startup mode: turns the bean definitions of app-config.xml into
+ * GeneratedAppContext, plain Java that creates and wires the same singletons.
+ *
+ * At runtime ClassPathXmlApplicationContext parses the XML, runs the placeholder configurer and
+ * the annotation post-processors, and CGLIB-subclasses every @Configuration class. The generated code
+ * only reads the properties file, calls constructors and @Bean methods in dependency order,
+ * then registers the finished singletons in a GenericApplicationContext.
+ *
+ * Supported, else generation fails: XML beans with constructor-arg values (String, int, long, double, boolean;
+ * literal or ${placeholder}) or refs,
+ * @Configuration beans whose @Inject/@Autowired fields are matched by a constructor taking them in order,
+ * @Bean methods with parameters resolved by @Qualifier or by type.
+ * Without the CGLIB proxy, @Bean methods must get their dependencies as parameters, not by calling each other.
+ *
+ * Regenerate after changing the XML or the wiring (the output is checked in):
+ * mvn -Pspring-codegen process-classes
+ */
+public class ContextCodeGenerator {
+    static final String GENERATED_CLASS = "GeneratedAppContext";
+    private static final Map<Class<?>, String> PARSERS = new HashMap<>();
+    static {
+        PARSERS.put(int.class, "Integer.parseInt");
+        PARSERS.put(long.class, "Long.parseLong");
+        PARSERS.put(double.class, "Double.parseDouble");
+        PARSERS.put(boolean.class, "Boolean.parseBoolean");
+    }
+
+    private final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+    private final Map<String, BeanSpec> beans = new LinkedHashMap<>();
+    private final List<String> propertyFiles = new ArrayList<>();
+
+    /** @param args output source root, default src/main/java */
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "src/main/java");
+        String source = new ContextCodeGenerator().generate(ServiceManager.XML_CONFIG_CLASSPATH);
+        Path file = root.resolve(ContextCodeGenerator.class.getPackage().getName().replace('.', '/'))
+                        .resolve(GENERATED_CLASS + ".java");
+        Files.createDirectories(file.getParent());
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        System.out.println("Wrote " + file);
+    }
+
+    String generate(String xmlConfig) throws ClassNotFoundException {
+        DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(factory).loadBeanDefinitions(new ClassPathResource(xmlConfig));
+        for (String name : factory.getBeanDefinitionNames()) {
+            BeanDefinition definition = factory.getBeanDefinition(name);
+            if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE && !isPlaceholderConfigurer(definition)) {
+                continue;  // <context:annotation-config/>: its work is done here, at build time
+            }
+            Class<?> type = ClassUtils.forName(definition.getBeanClassName(), getClass().getClassLoader());
+            if (PropertySourcesPlaceholderConfigurer.class.isAssignableFrom(type)) {
+                propertyFiles.addAll(locations(definition));
+            } else if (BeanFactoryPostProcessor.class.isAssignableFrom(type)
+                    || BeanPostProcessor.class.isAssignableFrom(type)) {
+                throw unsupported(name, "custom post-processor " + type.getName());
+            } else if (type.isAnnotationPresent(Configuration.class)) {
+                addConfiguration(name, type);
+            } else {
+                addXmlBean(name, type, definition);
+            }
+        }
+        return write(xmlConfig, ordered());
+    }
+
+    private static boolean isPlaceholderConfigurer(BeanDefinition definition) {
+        return PropertySourcesPlaceholderConfigurer.class.getName().equals(definition.getBeanClassName());
+    }
+
+    private static List<String> locations(BeanDefinition definition) {
+        PropertyValue locations = definition.getPropertyValues().getPropertyValue("locations");
+        List<String> result = new ArrayList<>();
+        if (locations != null) {
+            Object value = locations.getValue();
+            Object[] values = value instanceof Object[] ? (Object[]) value
+                    : value instanceof List ? ((List<?>) value).toArray() : new Object[] {value};
+            for (Object location : values) {
+                String text = location instanceof TypedStringValue ? ((TypedStringValue) location).getValue()
+                                                                   : String.valueOf(location);
+                result.addAll(Arrays.asList(text.split("\\s*,\\s*")));
+            }
+        }
+        return result;
+    }
+
+    private void addXmlBean(String name, Class<?> type, BeanDefinition definition) {
+        if (!definition.getPropertyValues().isEmpty()) {
+            throw unsupported(name, "property injection");
+        }
+        ConstructorArgumentValues args = definition.getConstructorArgumentValues();
+        Constructor<?> constructor = constructor(name, type, args.getArgumentCount());
+        String[] names = parameterNames.getParameterNames(constructor);
+        Class<?>[] types = constructor.getParameterTypes();
+        List<String> expressions = new ArrayList<>();
+        List<String> dependencies = new ArrayList<>();
+        Set<ConstructorArgumentValues.ValueHolder> used = new HashSet<>();
+        for (int i = 0; i < types.length; i++) {
+            // as Spring matches them: by index, else by name (from debug info), else the next unused one
+            ConstructorArgumentValues.ValueHolder holder =
+                    args.getArgumentValue(i, types[i], names == null ? null : names[i], used);
+            if (holder == null) {
+                throw unsupported(name, "constructor argument " + i + " not found"
+                        + (names == null ? ", matching constructor-arg names needs classes compiled with -g" : ""));
+            }
+            used.add(holder);
+            Object value = holder.getValue();
+            if (value instanceof RuntimeBeanReference) {
+                String ref = ((RuntimeBeanReference) value).getBeanName();
+                dependencies.add(ref);
+                expressions.add(variable(ref));
+            } else if (value instanceof TypedStringValue && types[i] == String.class) {
+                expressions.add(stringExpression(name, ((TypedStringValue) value).getValue()));
+            } else if (value instanceof TypedStringValue && PARSERS.containsKey(types[i])) {
+                // the conversion Spring does for a constructor-arg value="..." of a primitive type
+                String text = stringExpression(name, ((TypedStringValue) value).getValue());
+                expressions.add(PARSERS.get(types[i]) + "(" + text + ")");
+            } else {
+                throw unsupported(name, "constructor argument of type " + types[i].getName());
+            }
+        }
+        beans.put(name, new BeanSpec(name, type, dependencies, "new " + typeName(type) + arguments(expressions), null));
+    }
+
+    private void addConfiguration(String name, Class<?> type) {
+        List<Class<?>> fieldTypes = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Inject.class) || field.isAnnotationPresent(Autowired.class)) {
+                fieldTypes.add(field.getType());
+            }
+        }
+        try {
+            type.getDeclaredConstructor(fieldTypes.toArray(new Class<?>[0]));
+        } catch (NoSuchMethodException e) {
+            throw unsupported(name, "@Configuration needs a constructor taking its injected fields " + fieldTypes);
+        }
+        List<Class<?>> dependencyTypes = new ArrayList<>(fieldTypes);
+        beans.put(name, new BeanSpec(name, type, new ArrayList<>(), null, dependencyTypes));
+
+        for (Method method : type.getDeclaredMethods()) {
+            Bean bean = method.getAnnotation(Bean.class);
+            if (bean == null) {
+                continue;
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                throw unsupported(method.getName(), "static @Bean method");
+            }
+            String beanName = bean.name().length > 0 ? bean.name()[0] : method.getName();
+            List<Class<?>> parameterTypes = new ArrayList<>();
+            List<String> qualifiers = new ArrayList<>();
+            for (Parameter parameter : method.getParameters()) {
+                Qualifier qualifier = parameter.getAnnotation(Qualifier.class);
+                qualifiers.add(qualifier == null ? null : qualifier.value());
+                parameterTypes.add(parameter.getType());
+            }
+            BeanSpec spec = new BeanSpec(beanName, method.getReturnType(), new ArrayList<>(), null, parameterTypes);
+            spec.factory = name;
+            spec.factoryMethod = method.getName();
+            spec.qualifiers = qualifiers;
+            beans.put(beanName, spec);
+        }
+    }
+
+    /** @return beans in an order where every bean comes after its dependencies */
+    private List<BeanSpec> ordered() {
+        for (BeanSpec bean : beans.values()) {
+            bean.resolve();
+        }
+        List<BeanSpec> ordered = new ArrayList<>();
+        List<String> done = new ArrayList<>();
+        while (ordered.size() < beans.size()) {
+            boolean progress = false;
+            for (BeanSpec bean : beans.values()) {
+                if (!done.contains(bean.name) && done.containsAll(bean.dependencies)) {
+                    ordered.add(bean);
+                    done.add(bean.name);
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                throw new IllegalStateException("Circular dependency between beans " + beans.keySet());
+            }
+        }
+        return ordered;
+    }
+
+    private String write(String xmlConfig, List<BeanSpec> ordered) {
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(getClass().getPackage().getName()).append(";\n\n")
+           .append("import org.springframework.context.support.GenericApplicationContext;\n\n")
+           .append("import java.io.IOException;\n")
+           .append("import java.io.InputStream;\n")
+           .append("import java.io.UncheckedIOException;\n")
+           .append("import java.util.Properties;\n\n")
+           .append("/**\n")
+           .append(" * Generated by ContextCodeGenerator from ").append(xmlConfig).append(", do not edit.\n")
+           .append(" * Same singletons as the XML context, created without XML parsing, reflection or proxies.\n")
+           .append(" */\n")
+           .append("final class ").append(GENERATED_CLASS).append(" {\n")
+           .append("    private ").append(GENERATED_CLASS).append("() {}\n\n")
+           .append("    static GenericApplicationContext create() {\n")
+           .append("        Properties properties = new Properties();\n");
+        for (String file : propertyFiles) {
+            out.append("        load(properties, ").append(literal(file.replaceFirst("^classpath:", ""))).append(");\n");
+        }
+        for (BeanSpec bean : ordered) {
+            out.append("        ").append(typeName(bean.type)).append(' ').append(variable(bean.name))
+               .append(" = ").append(bean.expression).append(";\n");
+        }
+        out.append("\n        GenericApplicationContext context = new GenericApplicationContext();\n");
+        for (BeanSpec bean : ordered) {
+            out.append("        context.getBeanFactory().registerSingleton(").append(literal(bean.name)).append(", ")
+               .append(variable(bean.name)).append(");\n");
+        }
+        for (BeanSpec bean : ordered) {
+            // Spring infers close() as the destroy method of an AutoCloseable bean, registerSingleton() does not
+            if (AutoCloseable.class.isAssignableFrom(bean.type)) {
+                out.append("        context.getDefaultListableBeanFactory().registerDisposableBean(")
+                   .append(literal(bean.name)).append(", ").append(variable(bean.name)).append("::close);\n");
+            }
+        }
+        out.append("        context.refresh();\n")
+           .append("        return context;\n")
+           .append("    }\n\n")
+           .append("    private static void load(Properties properties, String classpath) {\n")
+           .append("        try (InputStream in = ").append(GENERATED_CLASS)
+           .append(".class.getClassLoader().getResourceAsStream(classpath)) {\n")
+           .append("            if (in == null) {\n")
+           .append("                throw new IllegalStateException(\"Could not find \" + classpath);\n")
+           .append("            }\n")
+           .append("            properties.load(in);\n")
+           .append("        } catch (IOException e) {\n")
+           .append("            throw new UncheckedIOException(e);\n")
+           .append("        }\n")
+           .append("    }\n\n")
+           .append("    /** ${key:default} as the placeholder configurer resolves it: system properties, environment, file */\n")
+           .append("    private static String property(Properties properties, String key, String defaultValue) {\n")
+           .append("        String value = System.getProperty(key);\n")
+           .append("        if (value == null) {\n")
+           .append("            value = System.getenv(key);\n")
+           .append("        }\n")
+           .append("        if (value == null) {\n")
+           .append("            value = properties.getProperty(key, defaultValue);\n")
+           .append("        }\n")
+           .append("        if (value == null) {\n")
+           .append("            throw new IllegalStateException(\"Could not resolve placeholder '\" + key + \"'\");\n")
+           .append("        }\n")
+           .append("        return value;\n")
+           .append("    }\n")
+           .append("}\n");
+        return out.toString();
+    }
+
+    /** a literal, or a single ${key} / ${key:default} placeholder */
+    private static String stringExpression(String bean, String value) {
+        if (!value.contains("${")) {
+            return literal(value);
+        }
+        if (!value.startsWith("${") || !value.endsWith("}") || value.indexOf("${", 2) >= 0) {
+            throw unsupported(bean, "placeholder embedded in text: " + value);
+        }
+        String key = value.substring(2, value.length() - 1);
+        int colon = key.indexOf(':');
+        String defaultValue = colon < 0 ? "null" : literal(key.substring(colon + 1));
+        return "property(properties, " + literal(colon < 0 ? key : key.substring(0, colon)) + ", " + defaultValue + ")";
+    }
+
+    private Constructor<?> constructor(String bean, Class<?> type, int arguments) {
+        Constructor<?> found = null;
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.getParameterCount() == arguments) {
+                if (found != null) {
+                    throw unsupported(bean, "ambiguous constructors with " + arguments + " arguments");
+                }
+                found = constructor;
+            }
+        }
+        if (found == null) {
+            throw unsupported(bean, "no constructor with " + arguments + " arguments");
+        }
+        return found;
+    }
+
+    /** "(a, b)", one argument per line once it gets long */
+    private static String arguments(List<String> expressions) {
+        String inline = String.join(", ", expressions);
+        return inline.length() <= 60 ? "(" + inline + ")"
+                                     : "(\n                " + String.join(",\n                ", expressions) + ")";
+    }
+
+    /** generated code lives in this package, other types are written fully qualified */
+    private static String typeName(Class<?> type) {
+        return type.getPackage() == ContextCodeGenerator.class.getPackage() ? type.getSimpleName()
+                                                                            : type.getCanonicalName();
+    }
+
+    private static String variable(String beanName) {
+        StringBuilder name = new StringBuilder();
+        for (char c : beanName.toCharArray()) {
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return Character.isJavaIdentifierStart(name.charAt(0)) ? name.toString() : "_" + name;
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private static IllegalStateException unsupported(String bean, String what) {
+        return new IllegalStateException("Cannot generate bean '" + bean + "': " + what);
+    }
+
+    /** one singleton; by-type dependencies are resolved to bean names once all beans are known */
+    private final class BeanSpec {
+        final String name;
+        final Class<?> type;
+        final List<String> dependencies;
+        String expression;
+        /** constructor parameters of a @Configuration bean, or parameters of a @Bean method */
+        final List<Class<?>> dependencyTypes;
+        List<String> qualifiers;
+        String factory;
+        String factoryMethod;
+
+        BeanSpec(String name, Class<?> type, List<String> dependencies, String expression,
+                 List<Class<?>> dependencyTypes) {
+            this.name = name;
+            this.type = type;
+            this.dependencies = dependencies;
+            this.expression = expression;
+            this.dependencyTypes = dependencyTypes;
+        }
+
+        void resolve() {
+            if (dependencyTypes == null) {
+                return;
+            }
+            List<String> arguments = new ArrayList<>();
+            for (int i = 0; i < dependencyTypes.size(); i++) {
+                String qualifier = qualifiers == null ? null : qualifiers.get(i);
+                String dependency = qualifier != null ? qualifier : byType(dependencyTypes.get(i));
+                if (!beans.containsKey(dependency)) {
+                    throw unsupported(name, "no bean '" + dependency + "'");
+                }
+                dependencies.add(dependency);
+                arguments.add(variable(dependency));
+            }
+            if (factory != null) {
+                dependencies.add(factory);
+                expression = variable(factory) + "." + factoryMethod + arguments(arguments);
+            } else {
+                expression = "new " + typeName(type) + arguments(arguments);
+            }
+        }
+
+        private String byType(Class<?> dependencyType) {
+            String match = null;
+            for (BeanSpec bean : beans.values()) {
+                if (dependencyType.isAssignableFrom(bean.type)) {
+                    if (match != null) {
+                        throw unsupported(name, "more than one bean of type " + dependencyType.getSimpleName());
+                    }
+                    match = bean.name;
+                }
+            }
+            if (match == null) {
+                throw unsupported(name, "no bean of type " + dependencyType.getSimpleName());
+            }
+            return match;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package spring.xmlcentric;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * The jdbc.* properties of application.properties, pooled by a ConnectionPool:
+ * getConnection() borrows, Connection.close() gives back. Closed with the application context.
+ */
+class DataSource implements javax.sql.DataSource, AutoCloseable {
+    private final String url;
+    private final ConnectionPool pool;
+
+    public DataSource(String url, String username, String password,
+                      int maxPoolSize, long borrowTimeoutMillis, long idleTimeoutMillis) {
+        this(url, username, password, maxPoolSize, borrowTimeoutMillis, idleTimeoutMillis, null);
+    }
+
+    /** @param validationQuery see ConnectionPool, jdbc.pool.validationQuery */
+    public DataSource(String url, String username, String password,
+                      int maxPoolSize, long borrowTimeoutMillis, long idleTimeoutMillis, String validationQuery) {
+        this.url = url;
+        this.pool = new ConnectionPool(url, username, password, maxPoolSize, borrowTimeoutMillis, idleTimeoutMillis,
+                                       validationQuery);
+    }
+    public String getUrl() { return url; }
+
+    @Override
+    public Connection getConnection() throws SQLException { return pool.getConnection(); }
+
+    /** one pool, one set of credentials */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("credentials are set by jdbc.username/jdbc.password");
+    }
+
+    public ConnectionPool.Metrics metrics() { return pool.metrics(); }
+
+    @Override
+    public void close() { pool.close(); }
+
+    @Override
+    public PrintWriter getLogWriter() { return null; }
+    @Override
+    public void setLogWriter(PrintWriter out) {}
+    @Override
+    public void setLoginTimeout(int seconds) {}
+    @Override
+    public int getLoginTimeout() { return 0; }
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException { throw new SQLFeatureNotSupportedException(); }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + type.getName());
+    }
+    @Override
+    public boolean isWrapperFor(Class<?> type) { return type.isInstance(this); }
+}
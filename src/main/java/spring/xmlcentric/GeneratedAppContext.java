@@ -0,0 +1,70 @@
+package spring.xmlcentric;
+
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Generated by ContextCodeGenerator from META-INF/spring-configuration/app-config.xml, do not edit.
+ * Same singletons as the XML context, created without XML parsing, reflection or proxies.
+ */
+final class GeneratedAppContext {
+    private GeneratedAppContext() {}
+
+    static GenericApplicationContext create() {
+        Properties properties = new Properties();
+        load(properties, "META-INF/application.properties");
+        DataSource dataSource = new DataSource(
+                property(properties, "jdbc.url", null),
+                property(properties, "jdbc.username", null),
+                property(properties, "jdbc.password", null),
+                Integer.parseInt(property(properties, "jdbc.pool.maxSize", "10")),
+                Long.parseLong(property(properties, "jdbc.pool.borrowTimeoutMillis", "30000")),
+                Long.parseLong(property(properties, "jdbc.pool.idleTimeoutMillis", "600000")),
+                property(properties, "jdbc.pool.validationQuery", ""));
+        AppConfig appConfig = new AppConfig(dataSource);
+        AccountRepository accountRepo = appConfig.accountRepository();
+        AccountCache accountCache = appConfig.accountCache(accountRepo);
+        TransferService transferService = appConfig.transferService(accountCache);
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.getBeanFactory().registerSingleton("dataSource", dataSource);
+        context.getBeanFactory().registerSingleton("appConfig", appConfig);
+        context.getBeanFactory().registerSingleton("accountRepo", accountRepo);
+        context.getBeanFactory().registerSingleton("accountCache", accountCache);
+        context.getBeanFactory().registerSingleton("transferService", transferService);
+        context.getDefaultListableBeanFactory().registerDisposableBean("dataSource", dataSource::close);
+        context.getDefaultListableBeanFactory().registerDisposableBean("accountRepo", accountRepo::close);
+        context.refresh();
+        return context;
+    }
+
+    private static void load(Properties properties, String classpath) {
+        try (InputStream in = GeneratedAppContext.class.getClassLoader().getResourceAsStream(classpath)) {
+            if (in == null) {
+                throw new IllegalStateException("Could not find " + classpath);
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** ${key:default} as the placeholder configurer resolves it: system properties, environment, file */
+    private static String property(Properties properties, String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key);
+        }
+        if (value == null) {
+            value = properties.getProperty(key, defaultValue);
+        }
+        if (value == null) {
+            throw new IllegalStateException("Could not resolve placeholder '" + key + "'");
+        }
+        return value;
+    }
+}
@@ -1,8 +1,12 @@
 package spring.xmlcentric;
 
-import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
 /**
  * 1. NoSuchBeanDefinitionException: No qualifying bean of type 'com.amazon....TransferService' available?
  * - "classpath*:/com/amazon/.../spring/xmlcentric/app-config.xml"
@@ -43,37 +47,28 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
  */
 public class ServiceManager {
     public static final String XML_CONFIG_CLASSPATH = "META-INF/spring-configuration/app-config.xml";
-    public static void main(String[] args) throws NoSuchFieldException {
-        ApplicationContext context = new ClassPathXmlApplicationContext(XML_CONFIG_CLASSPATH);
+
+    /**
+     * args "fast": the same beans from GeneratedAppContext (see ContextCodeGenerator),
+     * no XML parsing, no placeholder/annotation post-processing, no CGLIB proxy of AppConfig.
+     */
+    public static void main(String[] args) throws NoSuchFieldException, SQLException {
+        long start = System.nanoTime();
+        boolean fast = args.length > 0 && "fast".equals(args[0]);
+        ConfigurableApplicationContext context = fast ? GeneratedAppContext.create()
+                                          : new ClassPathXmlApplicationContext(XML_CONFIG_CLASSPATH);
+        System.out.println(String.format("%s context started in %d ms", fast ? "generated" : "XML",
+                                         (System.nanoTime() - start) / 1_000_000));
         DataSource dataSource = context.getBean(DataSource.class);
         TransferService transferService = context.getBean(TransferService.class);
         System.out.println(transferService
-                           .getClass().getDeclaredField("accountRepository"));
+                           .getClass().getDeclaredField("accounts"));
         System.out.println(dataSource.getUrl());
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            System.out.println(metaData.getDatabaseProductName() + " " + metaData.getDatabaseProductVersion());
+        }
+        System.out.println(dataSource.metrics());
+        context.close();
     }
 }
-
-class TransferService {
-    private AccountRepository accountRepository;
-    public TransferService(AccountRepository accountRepository) {
-        this.accountRepository = accountRepository;
-    }
-}
-
-class AccountRepository {
-    private DataSource dataSource;
-    public AccountRepository(DataSource dataSource) { this.dataSource = dataSource; }
-}
-
-class DataSource {
-    private String url;
-    private String username;
-    private String password;
-
-    public DataSource(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
-    }
-    public String getUrl() { return url; }
-}
@@ -0,0 +1,233 @@
+package spring.xmlcentric;
+
+import playground.Counters;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transfers between accounts of an AccountStore, safe under any number of concurrent callers.
+ *
+ * 1. striped locks: an account maps to one of a fixed set of locks (a power of two, hashed id),
+ *    two transfers only contend when they share a stripe, not a global lock per transfer
+ * 2. no deadlock: the two stripes of a transfer are always locked lower index first,
+ *    so A -> B and B -> A running at the same time acquire in the same order; same stripe, one lock
+ * 3. under both locks: read both balances, check funds, save both in one transaction,
+ *    no other transfer can read or write either account in between, money is neither lost nor created
+ *
+ * More stripes than threads keeps collisions rare (STRIPES = 1024 by default); memory is a lock per stripe,
+ * independent of the number of accounts.
+ */
+class TransferService {
+    static final int STRIPES = 1024;
+
+    private final AccountStore accounts;
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final Counters.Counter transfers = Counters.striped();
+    private final Counters.Counter rejected = Counters.striped();
+
+    public TransferService(AccountStore accounts) {
+        this(accounts, STRIPES);
+    }
+
+    TransferService(AccountStore accounts, int stripes) {
+        this.accounts = accounts;
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;  // power of two >= stripes
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param amount in cents, > 0
+     * @return false, and nothing changed, if from has less than amount
+     */
+    public boolean transfer(long from, long to, long amount) throws SQLException {
+        return locked(from, to, amount, () -> {
+            long fromBalance = accounts.balance(from);
+            if (fromBalance < amount) {
+                rejected.increment();
+                return false;
+            }
+            long toBalance = accounts.balance(to);
+            accounts.saveBalances(from, fromBalance - amount, to, toBalance + amount);
+            transfers.increment();
+            return true;
+        });
+    }
+
+    /**
+     * transfer() for an AccountRepository in write-behind mode: the locks are released once the new balances
+     * are recorded, not when they are committed, the next transfer of the same accounts does not wait for the disk.
+     * @return completes with false at once if from has less than amount, with true once the transfer is committed
+     */
+    public CompletableFuture<Boolean> transferAsync(long from, long to, long amount) throws SQLException {
+        return locked(from, to, amount, () -> {
+            long fromBalance = accounts.balance(from);
+            if (fromBalance < amount) {
+                rejected.increment();
+                return CompletableFuture.completedFuture(false);
+            }
+            long toBalance = accounts.balance(to);
+            CompletableFuture<Void> committed =
+                    accounts.saveBalancesAsync(from, fromBalance - amount, to, toBalance + amount);
+            transfers.increment();
+            return committed.thenApply(done -> true);
+        });
+    }
+
+    private interface LockedWork<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> T locked(long from, long to, long amount, LockedWork<T> work) throws SQLException {
+        if (from == to || amount <= 0) {
+            throw new IllegalArgumentException("transfer " + amount + " from " + from + " to " + to);
+        }
+        int a = stripe(from);
+        int b = stripe(to);
+        ReentrantLock first = locks[Math.min(a, b)];
+        ReentrantLock second = locks[Math.max(a, b)];
+        first.lock();
+        try {
+            second.lock();  // same stripe: reentrant, one more hold count
+            try {
+                return work.run();
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    private int stripe(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;  // spread sequential ids over the stripes
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public long transfers() { return transfers.get(); }
+    public long rejected() { return rejected.get(); }
+
+    /**
+     * Stress run against embedded HSQLDB: random transfers between 10000 accounts, then all threads
+     * moving money back and forth between the same 2 accounts (opposite directions, the deadlock case),
+     * then the random transfers again with transferAsync() on a write-behind AccountRepository.
+     * Every round checks that the total balance did not change and throws IllegalStateException if it did.
+     *
+     * example output (1 core, every round 2 s):
+     * 1 threads: 2022 transfers/s, 0 rejected, total 1000000000 ok
+     * 2 threads: 2463 transfers/s, 0 rejected, total 1000000000 ok
+     * 4 threads: 3204 transfers/s, 0 rejected, total 1000000000 ok
+     * 8 threads: 3669 transfers/s, 0 rejected, total 1000000000 ok
+     * 8 threads, 2 accounts, both directions: 4775 transfers/s, 12 rejected, total 1000000000 ok
+     * 8 threads, write-behind 2 ms/64 rows: 10606 transfers/s, 0 rejected, total 1000000000 ok, commit latency avg 3.65 ms max 37.84 ms
+     * write-through: 28444 saves, 28444 commits, 2.0 rows/commit
+     * write-behind: 21264 saves, 780 commits, 54.3 rows/commit
+     */
+    public static void main(String[] args) throws Exception {
+        int accounts = 10_000;
+        long initial = 100_000;
+        // a file database with a sync per commit (write_delay=false): a commit costs what it costs on a real database
+        String url = "jdbc:hsqldb:file:target/transfers-db/transfers;hsqldb.tx=mvcc;hsqldb.write_delay=false"
+                     + ";shutdown=true";
+        try (DataSource dataSource = new DataSource(url, "sa", "", 16, 10_000, 60_000)) {
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE ACCOUNT IF EXISTS");  // left by the previous run
+            }
+            AccountRepository repository = new AccountRepository(dataSource);
+            repository.createTable();
+            for (long id = 0; id < accounts; id++) {
+                repository.open(id, initial);
+            }
+            long total = repository.totalBalance();
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads <= Math.max(8, cores * 2); threads *= 2) {
+                stress(repository, new TransferService(repository), threads, accounts, total, threads + " threads");
+            }
+            int threads = Math.max(8, cores * 2);
+            stress(repository, new TransferService(repository), threads, 2, total,
+                   threads + " threads, 2 accounts, both directions");
+            try (AccountRepository writeBehind = new AccountRepository(dataSource, 2, 64)) {
+                stress(writeBehind, new TransferService(writeBehind), threads, accounts, total,
+                       threads + " threads, write-behind 2 ms/64 rows");
+                System.out.println("write-through: " + repository.writeMetrics());
+                System.out.println("write-behind: " + writeBehind.writeMetrics());
+            }
+        }
+    }
+
+    private static void stress(AccountRepository repository, TransferService service, int threads, int accounts,
+                               long expectedTotal, String label) throws Exception {
+        long duration = TimeUnit.SECONDS.toNanos(2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        boolean writeBehind = repository.isWriteBehind();
+        LongAdder latencyNanos = new LongAdder();
+        LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    CompletableFuture<Boolean> last = null;
+                    while (System.nanoTime() - start < duration) {
+                        long from = random.nextInt(accounts);
+                        long to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+                        if (writeBehind) {
+                            long submitted = System.nanoTime();
+                            last = service.transferAsync(from, to, 1 + random.nextInt(1_000));
+                            last.thenRun(() -> {
+                                long latency = System.nanoTime() - submitted;
+                                latencyNanos.add(latency);
+                                maxLatencyNanos.accumulate(latency);
+                            });
+                        } else {
+                            service.transfer(from, to, 1 + random.nextInt(1_000));
+                        }
+                    }
+                    if (last != null) {
+                        last.join();  // windows commit in order, so all earlier transfers of this thread are in
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        executor.shutdown();
+        if (!done.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(label + ": transfers still running after 30 s, deadlock?");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = repository.totalBalance();
+        if (total != expectedTotal) {
+            throw new IllegalStateException(label + ": total balance " + total + ", expected " + expectedTotal);
+        }
+        System.out.println(String.format("%s: %.0f transfers/s, %d rejected, total %d ok",
+                                         label, service.transfers() / seconds, service.rejected(), total)
+                           + (writeBehind ? String.format(", commit latency avg %.2f ms max %.2f ms",
+                                                          latencyNanos.sum() / 1e6 / service.transfers(),
+                                                          maxLatencyNanos.get() / 1e6) : ""));
+    }
+}
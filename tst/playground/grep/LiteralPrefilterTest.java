@@ -0,0 +1,87 @@
+package playground.grep;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The prefilter never drops a line the regex matches: every pattern is checked against a plain line-by-line scan.
+ */
+public class LiteralPrefilterTest {
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private static final String TEXT = "Foo bar\nfoo bar\nFOO bar\nERROR 42 at disk\nerror 7 at net\n"
+                                       + "WARN café\nno match here\r\nfoo|bar\n";
+
+    @Test
+    public void requiredLiterals() {
+        assertEquals("ERROR ", LiteralPrefilter.requiredLiteral("ERROR \\d+ at (\\w+)", 0));
+        assertEquals("foo|bar", LiteralPrefilter.requiredLiteral("foo|bar", Pattern.LITERAL));
+        assertEquals("abc", LiteralPrefilter.requiredLiteral("\\Qabc\\E", 0));
+        assertEquals("ab", LiteralPrefilter.requiredLiteral("abc?", 0));
+        assertNull(LiteralPrefilter.requiredLiteral("foo|bar", 0));
+        assertNull(LiteralPrefilter.requiredLiteral("(?i)foo", 0));
+        assertNull(LiteralPrefilter.requiredLiteral("foo", Pattern.CASE_INSENSITIVE));
+    }
+
+    @Test
+    public void caseInsensitiveLiteralHasNoPrefilter() throws IOException {
+        Pattern pattern = Pattern.compile("Foo", Pattern.LITERAL | Pattern.CASE_INSENSITIVE);
+        assertNull(LiteralPrefilter.requiredLiteral(pattern.pattern(), pattern.flags()));
+        assertNull(LiteralPrefilter.of(pattern, UTF_8));
+        assertEquals(4, scan(pattern).size());  // Foo, foo, FOO, foo|bar
+        assertEquals(scan(pattern), prefiltered(pattern));
+    }
+
+    @Test
+    public void sameLinesAsAFullScan() throws IOException {
+        Pattern[] patterns = {
+                Pattern.compile("Foo"),
+                Pattern.compile("Foo", Pattern.LITERAL),
+                Pattern.compile("foo|bar", Pattern.LITERAL),
+                Pattern.compile("Foo", Pattern.LITERAL | Pattern.CASE_INSENSITIVE),
+                Pattern.compile("foo", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE),
+                Pattern.compile("(?i)error \\d+"),
+                Pattern.compile("ERROR \\d+ at (\\w+)"),
+                Pattern.compile("café", Pattern.CANON_EQ),
+                Pattern.compile("match here$"),
+        };
+        for (Pattern pattern : patterns) {
+            assertEquals(pattern + " flags " + pattern.flags(), scan(pattern), prefiltered(pattern));
+        }
+    }
+
+    private static List<String> scan(Pattern pattern) {
+        List<String> lines = new ArrayList<>();
+        for (String line : TEXT.split("\r?\n")) {
+            if (pattern.matcher(line).find()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /** the lines the prefilter hands over that the regex matches, as RegexJGrep does */
+    private static List<String> prefiltered(Pattern pattern) throws IOException {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(pattern, UTF_8);
+        if (prefilter == null) {
+            return scan(pattern);
+        }
+        List<String> lines = new ArrayList<>();
+        ByteBuffer bytes = ByteBuffer.wrap(TEXT.getBytes(UTF_8));
+        prefilter.candidateLines(bytes, 0, bytes.limit(), UTF_8, line -> {
+            if (pattern.matcher(line).find()) {
+                lines.add(line);
+            }
+        });
+        return lines;
+    }
+}
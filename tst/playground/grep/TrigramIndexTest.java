@@ -0,0 +1,117 @@
+package playground.grep;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Indexed grep against a full scan, with run sizes small enough to force several sorted runs and merge passes.
+ */
+public class TrigramIndexTest {
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexedGrepEqualsFullScan() throws IOException {
+        Path file = log(20_000);
+        TrigramIndex.build(file, TrigramIndex.sidecar(file), 2048, 1000);  // hundreds of runs, two merge passes
+        assertSameAsScan(file, "ERROR4\\d login", "timeout49 disk1", "zzz", "disk12 ok3");
+    }
+
+    @Test
+    public void concurrentBuildsOfOneFile() throws Exception {
+        Path file = log(5_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> builds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            builds.add(executor.submit(() -> {
+                TrigramIndex.build(file, TrigramIndex.sidecar(file), 2048, 5000);
+                return null;
+            }));
+        }
+        for (Future<?> build : builds) {
+            build.get();
+        }
+        executor.shutdown();
+        assertEquals(new HashSet<>(Arrays.asList(file.getFileName().toString(),
+                                                 TrigramIndex.sidecar(file).getFileName().toString())),
+                     fileNames());
+        assertSameAsScan(file, "ERROR4\\d login", "user7 full");
+    }
+
+    @Test
+    public void failedBuildLeavesNothingBehind() throws IOException {
+        Path notAFile = folder.newFolder("app.log").toPath();
+        try {
+            TrigramIndex.build(notAFile, TrigramIndex.sidecar(notAFile), 2048, 1000);
+            fail("indexed a directory");
+        } catch (IOException expected) {
+            assertEquals(0, expected.getSuppressed().length);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("app.log")), fileNames());
+    }
+
+    private Path log(int lines) throws IOException {
+        String[] words = {"ERROR", "WARN", "INFO", "disk", "full", "user", "login", "timeout", "ok"};
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(i);
+            for (int j = 0; j < 6; j++) {
+                text.append(' ').append(words[random.nextInt(words.length)]).append(random.nextInt(50));
+            }
+            text.append('\n');
+        }
+        Path file = folder.getRoot().toPath().resolve("app.log");
+        Files.write(file, text.toString().getBytes(UTF_8));
+        return file;
+    }
+
+    private HashSet<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.map(path -> path.getFileName().toString()).collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    private static void assertSameAsScan(Path file, String... regexes) throws IOException {
+        List<String> lines = Files.readAllLines(file, UTF_8);
+        try (TrigramIndex index = TrigramIndex.open(file)) {
+            for (String regex : regexes) {
+                Pattern pattern = Pattern.compile(regex);
+                List<String> expected = lines.stream().filter(line -> pattern.matcher(line).find())
+                                             .collect(Collectors.toList());
+                List<String> actual = new ArrayList<>();
+                index.grep(LiteralPrefilter.of(pattern, UTF_8), UTF_8, line -> {
+                    if (pattern.matcher(line).find()) {
+                        actual.add(line);
+                    }
+                });
+                assertEquals(regex, expected, actual);
+            }
+        }
+        assertTrue(TrigramIndex.isFresh(file, TrigramIndex.sidecar(file)));
+    }
+}
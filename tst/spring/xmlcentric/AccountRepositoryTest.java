@@ -0,0 +1,251 @@
+package spring.xmlcentric;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * AccountRepository in write-behind mode against in-process HSQLDB, one in-memory database per test.
+ * The table is read with plain SQL, around the repository and its windows.
+ */
+public class AccountRepositoryTest {
+    private static final int ACCOUNTS = 100;
+    private static final long INITIAL = 10_000;
+
+    @Rule
+    public final TestName test = new TestName();
+
+    private DataSource dataSource;
+
+    @Before
+    public void openAccounts() throws SQLException {
+        dataSource = new DataSource("jdbc:hsqldb:mem:repotest-" + test.getMethodName() + ";hsqldb.tx=mvcc",
+                                    "sa", "", 16, 10_000, 60_000);
+        AccountRepository repository = new AccountRepository(dataSource);
+        repository.createTable();
+        for (long id = 0; id < ACCOUNTS; id++) {
+            repository.open(id, INITIAL);
+        }
+    }
+
+    @After
+    public void close() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void futuresCompleteOnlyOnceCommitted() throws Exception {
+        try (AccountRepository repository = new AccountRepository(dataSource, 300, 1_000)) {
+            CompletableFuture<Void> saved = repository.saveBalancesAsync(1, 9_000, 2, 11_000);
+            // read your writes: the repository answers from the window, the table has not changed yet
+            assertEquals(9_000, repository.balance(1));
+            assertEquals(11_000, repository.balance(2));
+            assertEquals(INITIAL, tableBalance(1));
+            assertFalse("completed before the window closed", saved.isDone());
+
+            // runs on the thread completing the future: the commit must be visible by then
+            CompletableFuture<Long> seenOnCompletion = saved.thenApply(done -> {
+                try {
+                    return tableBalance(1) + tableBalance(2) * 1_000_000;
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            });
+            assertEquals(9_000 + 11_000L * 1_000_000, (long) seenOnCompletion.get(5, TimeUnit.SECONDS));
+            assertEquals(9_000, repository.balance(1));
+        }
+    }
+
+    @Test
+    public void windowWritesAnAccountOnceWithItsLastBalance() throws Exception {
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        AccountRepository repository = new AccountRepository(dataSource, 5_000, 1_000);
+        for (int i = 1; i <= 10; i++) {
+            saves.add(repository.saveBalancesAsync(1, INITIAL - i, 2, INITIAL + i));
+        }
+        assertEquals(INITIAL - 10, repository.balance(1));
+        repository.close();
+        assertEquals("10 saves, 1 commits, 2.0 rows/commit", repository.writeMetrics());
+        for (CompletableFuture<Void> save : saves) {
+            assertTrue(save.isDone() && !save.isCompletedExceptionally());
+        }
+        assertEquals(INITIAL - 10, tableBalance(1));
+        assertEquals(INITIAL + 10, tableBalance(2));
+    }
+
+    @Test
+    public void fullWindowIsCommittedWithoutWaitingForFlushMillis() throws Exception {
+        try (AccountRepository repository = new AccountRepository(dataSource, 60_000, 2)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                repository.saveBalancesAsync(2 * i, INITIAL - 1, 2 * i + 1, INITIAL + 1).get(5, TimeUnit.SECONDS);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+            assertEquals("20 saves, 20 commits, 2.0 rows/commit", repository.writeMetrics());
+        }
+    }
+
+    @Test
+    public void fullWindowBlocksSavesWhileACommitIsInFlight() throws Exception {
+        try (AccountRepository repository = new AccountRepository(dataSource, 60_000, 2);
+             Connection holder = dataSource.getConnection()) {
+            // an uncommitted update keeps the flusher's first commit waiting for the row lock
+            holder.setAutoCommit(false);
+            try (Statement statement = holder.createStatement()) {
+                statement.executeUpdate("UPDATE ACCOUNT SET BALANCE = BALANCE WHERE ID = 0");
+            }
+            CompletableFuture<Void> first = repository.saveBalancesAsync(0, INITIAL - 1, 1, INITIAL + 1);
+            CompletableFuture<Void> second = repository.saveBalancesAsync(2, INITIAL - 1, 3, INITIAL + 1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<CompletableFuture<Void>> third =
+                    executor.submit(() -> repository.saveBalancesAsync(4, INITIAL - 1, 5, INITIAL + 1));
+            try {
+                third.get(300, TimeUnit.MILLISECONDS);
+                fail("a third window was accepted while one is in flight and the next is full");
+            } catch (TimeoutException expected) {
+                // waiting for room
+            }
+            assertFalse(first.isDone() || second.isDone());
+            assertEquals(INITIAL - 1, repository.balance(0));  // in flight
+            assertEquals(INITIAL - 1, repository.balance(2));  // pending
+
+            holder.rollback();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+            third.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            executor.shutdown();
+            for (long id = 0; id < 6; id++) {
+                assertEquals(id % 2 == 0 ? INITIAL - 1 : INITIAL + 1, tableBalance(id));
+            }
+        }
+    }
+
+    @Test
+    public void failedCommitFailsEveryLaterSave() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE ACCOUNT ADD CONSTRAINT NOT_NEGATIVE CHECK (BALANCE >= 0)");
+        }
+        try (AccountRepository repository = new AccountRepository(dataSource, 50, 1_000)) {
+            CompletableFuture<Void> rejected = repository.saveBalancesAsync(1, -1, 2, 2 * INITIAL + 1);
+            CompletableFuture<Void> behind = repository.saveBalancesAsync(3, INITIAL - 5, 4, INITIAL + 5);
+            assertFails(rejected);
+            assertFails(behind);  // same window or the one after: never committed either way
+
+            CompletableFuture<Void> later = repository.saveBalancesAsync(5, INITIAL - 1, 6, INITIAL + 1);
+            assertTrue("a save after the failure was accepted", later.isCompletedExceptionally());
+            try {
+                repository.saveBalances(5, INITIAL - 1, 6, INITIAL + 1);
+                fail("saveBalances() accepted after the failure");
+            } catch (SQLException expected) {
+                // write-behind stopped
+            }
+            // after the failure balance() reads the table, which kept the last committed state
+            for (long id = 1; id <= 6; id++) {
+                assertEquals(INITIAL, repository.balance(id));
+                assertEquals(INITIAL, tableBalance(id));
+            }
+        }
+    }
+
+    @Test
+    public void closeCommitsWhatIsPending() throws Exception {
+        AccountRepository repository = new AccountRepository(dataSource, 60_000, 1_000);
+        CompletableFuture<Void> saved = repository.saveBalancesAsync(7, INITIAL - 70, 8, INITIAL + 70);
+        long start = System.nanoTime();
+        repository.close();
+        assertTrue("close() waited for flushMillis", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(saved.isDone() && !saved.isCompletedExceptionally());
+        assertEquals(INITIAL - 70, tableBalance(7));
+        assertEquals(INITIAL + 70, tableBalance(8));
+        assertTrue(repository.saveBalancesAsync(7, 0, 8, 0).isCompletedExceptionally());
+    }
+
+    @Test
+    public void concurrentTransfersKeepTheTotal() throws Exception {
+        int threads = 8;
+        try (AccountRepository repository = new AccountRepository(dataSource, 2, 64)) {
+            TransferService service = new TransferService(repository);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<List<CompletableFuture<Boolean>>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<CompletableFuture<Boolean>> transfers = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        long from = random.nextInt(ACCOUNTS);
+                        long to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                        transfers.add(service.transferAsync(from, to, 1 + random.nextInt(2 * (int) INITIAL)));
+                    }
+                    return transfers;
+                }));
+            }
+            for (Future<List<CompletableFuture<Boolean>>> result : results) {
+                for (CompletableFuture<Boolean> transfer : result.get(60, TimeUnit.SECONDS)) {
+                    transfer.get(10, TimeUnit.SECONDS);  // committed, or rejected for lack of funds
+                }
+            }
+            executor.shutdown();
+            assertEquals(threads * 500, service.transfers() + service.rejected());
+            assertTrue("no transfer went through", service.transfers() > 0);
+            assertTrue("amounts never exceed the funds", service.rejected() > 0);
+        }
+        long total = 0;
+        for (long id = 0; id < ACCOUNTS; id++) {
+            long balance = tableBalance(id);
+            assertTrue("account " + id + " at " + balance, balance >= 0);
+            total += balance;
+        }
+        assertEquals(ACCOUNTS * INITIAL, total);
+    }
+
+    private static void assertFails(CompletableFuture<Void> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("committed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof SQLException);
+        } catch (TimeoutException e) {
+            fail("neither committed nor failed after 5 s");
+        }
+    }
+
+    private long tableBalance(long id) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement("SELECT BALANCE FROM ACCOUNT WHERE ID = ?")) {
+            select.setLong(1, id);
+            try (ResultSet rs = select.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        }
+    }
+}
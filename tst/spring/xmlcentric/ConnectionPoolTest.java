@@ -0,0 +1,266 @@
+package spring.xmlcentric;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * ConnectionPool against in-process HSQLDB, one in-memory database per test.
+ */
+public class ConnectionPoolTest {
+
+    @Test
+    public void neverMoreThanMaxSizeInUseOrOpen() throws Exception {
+        int threads = 16;
+        try (ConnectionPool pool = new ConnectionPool(url("bound"), "sa", "", 4, 10_000, 60_000)) {
+            AtomicInteger inUse = new AtomicInteger();
+            LongAccumulator maxInUse = new LongAccumulator(Math::max, 0);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch done = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            try (Connection connection = pool.getConnection()) {
+                                maxInUse.accumulate(inUse.incrementAndGet());
+                                query(connection);
+                                inUse.decrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue("still borrowing after 30 s", done.await(30, TimeUnit.SECONDS));
+            executor.shutdown();
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            ConnectionPool.Metrics metrics = pool.metrics();
+            assertTrue("max in use " + maxInUse.get(), maxInUse.get() <= 4);
+            assertTrue(metrics.toString(), metrics.created <= 4 && metrics.open <= 4);
+            assertEquals(threads * 500, metrics.borrowed);
+            assertEquals(0, metrics.active);
+            assertEquals(0, metrics.timeouts);
+        }
+    }
+
+    @Test
+    public void borrowTimesOutWhileAllAreInUse() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url("timeout"), "sa", "", 2, 200, 60_000)) {
+            Connection first = pool.getConnection();
+            Connection second = pool.getConnection();
+            long start = System.nanoTime();
+            try {
+                pool.getConnection();
+                fail("borrowed a third connection from a pool of 2");
+            } catch (SQLTransientConnectionException expected) {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue("gave up after " + waited + " ms", waited >= 150 && waited < 5_000);
+            }
+            assertEquals(1, pool.metrics().timeouts);
+            assertEquals(2, pool.metrics().active);
+
+            first.close();
+            try (Connection third = pool.getConnection()) {
+                query(third);
+            }
+            second.close();
+            assertEquals(0, pool.metrics().active);
+            assertEquals(2, pool.metrics().created);
+        }
+    }
+
+    @Test
+    public void waiterGetsTheReturnedConnection() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url("handoff"), "sa", "", 1, 5_000, 60_000)) {
+            Connection held = pool.getConnection();
+            Thread returner = new Thread(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    held.close();
+                } catch (InterruptedException | SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            returner.start();
+            try (Connection next = pool.getConnection()) {
+                query(next);
+            }
+            returner.join();
+            assertEquals(1, pool.metrics().created);
+            assertEquals(0, pool.metrics().timeouts);
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url("evict"), "sa", "", 4, 1_000, 200)) {
+            Connection a = pool.getConnection();
+            Connection b = pool.getConnection();
+            Connection c = pool.getConnection();
+            a.close();
+            b.close();
+            c.close();
+            assertEquals(3, pool.metrics().open);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.metrics().open > 0 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            assertEquals(pool.metrics().toString(), 0, pool.metrics().open);
+            assertEquals(3, pool.metrics().evicted);
+
+            try (Connection again = pool.getConnection()) {
+                query(again);
+            }
+            assertEquals(4, pool.metrics().created);
+        }
+    }
+
+    @Test
+    public void deadIdleConnectionsAreNotHandedOut() throws Exception {
+        String url = url("validate");
+        // HSQLDB mem: isValid() stays true after SHUTDOWN, the validation query sees it
+        try (ConnectionPool pool = new ConnectionPool(url, "sa", "", 4, 1_000, 60_000, "VALUES (1)")) {
+            Connection a = pool.getConnection();
+            Connection b = pool.getConnection();
+            a.close();
+            b.close();
+            // closes every session of the database, including both idle pooled connections
+            try (Connection direct = DriverManager.getConnection(url, "sa", "");
+                 Statement statement = direct.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+            TimeUnit.MILLISECONDS.sleep(ConnectionPool.VALIDATE_AFTER_MILLIS + 100);
+
+            try (Connection connection = pool.getConnection()) {
+                query(connection);
+            }
+            ConnectionPool.Metrics metrics = pool.metrics();
+            assertEquals(metrics.toString(), 2, metrics.invalid);
+            assertEquals(3, metrics.created);
+            assertEquals(1, metrics.open);
+        }
+    }
+
+    @Test
+    public void returnRollsBackAndRestoresAutoCommit() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url("reset"), "sa", "", 1, 1_000, 60_000)) {
+            try (Connection connection = pool.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE T (ID INT)");
+            }
+            Connection connection = pool.getConnection();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO T VALUES (1)");
+            }
+            connection.close();  // no commit
+            connection.close();  // a second close is a no-op
+            assertTrue(connection.isClosed());
+            try {
+                connection.createStatement();
+                fail("used a returned connection");
+            } catch (SQLException expected) {
+                // the proxy is detached from the pooled connection
+            }
+
+            try (Connection next = pool.getConnection();
+                 Statement statement = next.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM T")) {
+                assertTrue(next.getAutoCommit());
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+            assertEquals(1, pool.metrics().created);
+            assertEquals(0, pool.metrics().invalid);
+        }
+    }
+
+    @Test
+    public void closingFromTwoThreadsReturnsOnce() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url("doubleclose"), "sa", "", 1, 1_000, 60_000)) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            CyclicBarrier both = new CyclicBarrier(2);
+            for (int i = 0; i < 20_000; i++) {
+                Connection connection = pool.getConnection();
+                Future<?> other = executor.submit(() -> {
+                    both.await();
+                    connection.close();
+                    return null;
+                });
+                both.await();
+                connection.close();
+                other.get();
+                // a second release would leave 2 permits for 1 connection: -1 active, or 2 open
+                ConnectionPool.Metrics metrics = pool.metrics();
+                assertEquals("iteration " + i + ": " + metrics, 0, metrics.active);
+                assertEquals("iteration " + i + ": " + metrics, 1, metrics.open);
+            }
+            executor.shutdown();
+            try (Connection first = pool.getConnection()) {
+                try {
+                    pool.getConnection().close();
+                    fail("two connections borrowed from a pool of 1");
+                } catch (SQLTransientConnectionException expected) {
+                    query(first);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void closedPoolRefusesBorrows() throws Exception {
+        ConnectionPool pool = new ConnectionPool(url("closed"), "sa", "", 2, 1_000, 60_000);
+        Connection held = pool.getConnection();
+        try (Connection idle = pool.getConnection()) {
+            assertNotNull(idle);
+        }
+        pool.close();
+        assertEquals(1, pool.metrics().open);  // the idle one is closed now, the held one when returned
+        held.close();
+        assertEquals(0, pool.metrics().open);
+        try {
+            pool.getConnection();
+            fail("borrowed from a closed pool");
+        } catch (SQLException expected) {
+            assertFalse(expected instanceof SQLTransientConnectionException);
+        }
+    }
+
+    private static String url(String test) {
+        return "jdbc:hsqldb:mem:pooltest-" + test;
+    }
+
+    private static void query(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("VALUES (1)")) {
+            assertTrue(rs.next());
+        }
+    }
+}